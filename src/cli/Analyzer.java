@@ -0,0 +1,187 @@
+package cli;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.PMDException;
+import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.RuleContext;
+import net.sourceforge.pmd.RuleSetFactory;
+import net.sourceforge.pmd.RuleSetNotFoundException;
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.SourceCodeProcessor;
+import net.sourceforge.pmd.lang.Language;
+import net.sourceforge.pmd.lang.LanguageRegistry;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.LanguageVersionHandler;
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.java.JavaLanguageModule;
+
+/*
+ * runs the LAPD rules on single files without Eclipse. PMD rules keep state
+ * while visiting a file, so each thread creates its own rule sets on its first
+ * file; the NLP models and the dictionary are loaded once and shared.
+ */
+public class Analyzer {
+
+  public static final String DEFAULT_RULESET = "LAPD_ruleset.xml";
+
+  private final String ruleset;
+  private final String encoding;
+  private final ClassLoader classLoader;
+  private final SourceCodeProcessor processor;
+  private final LanguageVersion languageVersion;
+  private final ThreadLocal<RuleSets> ruleSets = new ThreadLocal<RuleSets>();
+
+  public Analyzer(final String ruleset, final String encoding) {
+
+    final PMDConfiguration configuration = new PMDConfiguration();
+
+    configuration.setSourceEncoding(encoding);
+    this.ruleset = ruleset;
+    this.encoding = encoding;
+    this.classLoader = configuration.getClassLoader();
+    this.processor = new SourceCodeProcessor(configuration);
+    this.languageVersion = LanguageRegistry.getLanguage(JavaLanguageModule.NAME)
+        .getDefaultVersion();
+  }
+
+  /*
+   * the violations and processing errors of the file.
+   */
+  public Report analyze(final File file) throws IOException, PMDException,
+      RuleSetNotFoundException {
+
+    try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+      return this.analyze(file, in);
+    }
+  }
+
+  public Report analyze(final File file, final InputStream source) throws PMDException,
+      RuleSetNotFoundException {
+
+    final RuleContext ctx = new RuleContext();
+    final Report report = new Report();
+
+    ctx.setReport(report);
+    ctx.setSourceCodeFile(file);
+    ctx.setSourceCodeFilename(file.getPath());
+    this.processor.processSourceCode(source, this.getRuleSets(), ctx);
+    return report;
+  }
+
+  public String getEncoding() {
+    return this.encoding;
+  }
+
+  /*
+   * the AST of a source, for analyzing it later with analyze(File, Node),
+   * possibly on another thread. As in SourceCodeProcessor, the qualified names
+   * and the symbol table are resolved here, since they do not depend on the
+   * rules.
+   */
+  public Node parse(final File file, final Reader source) {
+
+    final LanguageVersionHandler handler = this.languageVersion.getLanguageVersionHandler();
+    final Node root = handler.getParser(handler.getDefaultParserOptions())
+        .parse(file.getPath(), source);
+
+    handler.getQualifiedNameResolutionFacade(this.classLoader).start(root);
+    handler.getSymbolFacade(this.classLoader).start(root);
+    return root;
+  }
+
+  /*
+   * the violations of an AST of parse(): the rules of the ruleset see it as
+   * processSourceCode would show it to them, with the data flow and the types
+   * resolved when one of them uses it, and skip the files they exclude.
+   */
+  public Report analyze(final File file, final Node root) throws RuleSetNotFoundException {
+
+    final RuleContext ctx = new RuleContext();
+    final Report report = new Report();
+    final RuleSets threadRuleSets = this.getRuleSets();
+    final LanguageVersionHandler handler = this.languageVersion.getLanguageVersionHandler();
+    final Language language = this.languageVersion.getLanguage();
+
+    if (!threadRuleSets.applies(file)) {
+      return report;
+    }
+    ctx.setReport(report);
+    ctx.setSourceCodeFile(file);
+    ctx.setSourceCodeFilename(file.getPath());
+    ctx.setLanguageVersion(this.languageVersion);
+    threadRuleSets.start(ctx);
+    try {
+      if (threadRuleSets.usesDFA(language)) {
+        handler.getDataFlowFacade().start(root);
+      }
+      if (threadRuleSets.usesTypeResolution(language)) {
+        handler.getTypeResolutionFacade(this.classLoader).start(root);
+      }
+      if (threadRuleSets.usesMultifile(language)) {
+        handler.getMultifileFacade().start(root);
+      }
+      threadRuleSets.apply(Collections.singletonList(root), ctx, language);
+    } finally {
+      threadRuleSets.end(ctx);
+    }
+    return report;
+  }
+
+  private RuleSets getRuleSets() throws RuleSetNotFoundException {
+
+    RuleSets threadRuleSets = this.ruleSets.get();
+
+    if (threadRuleSets == null) {
+      threadRuleSets = new RuleSetFactory().createRuleSets(this.ruleset);
+      this.ruleSets.set(threadRuleSets);
+    }
+    return threadRuleSets;
+  }
+
+  /*
+   * the .java files of the paths, files or directories walked recursively,
+   * in a stable order.
+   */
+  public static List<File> collectSources(final List<String> paths) throws IOException {
+
+    final List<File> sources = new ArrayList<File>();
+
+    for (final String path : paths) {
+      final File root = new File(path);
+
+      if (root.isFile()) {
+        sources.add(root);
+        continue;
+      }
+      final List<File> found = new ArrayList<File>();
+      Files.walkFileTree(root.toPath(), new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult visitFile(final Path file, final BasicFileAttributes attributes) {
+          if (attributes.isRegularFile() && file.getFileName().toString().endsWith(".java")) {
+            found.add(file.toFile());
+          }
+          return FileVisitResult.CONTINUE;
+        }
+      });
+      Collections.sort(found);
+      sources.addAll(found);
+    }
+    return sources;
+  }
+
+}
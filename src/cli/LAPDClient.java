@@ -0,0 +1,123 @@
+package cli;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * thin client of LAPDDaemon, printing the violations like LAPDRunner:
+ *
+ * java cli.LAPDClient [-port n] path...
+ * java cli.LAPDClient [-port n] -stats | -shutdown
+ *
+ * The client authenticates with the token the daemon wrote to
+ * LAPDDaemon.tokenFile(port), so it runs as the user of the daemon. The exit
+ * status is 4 if there are violations, 1 on an error, in particular if no
+ * daemon is listening.
+ */
+public final class LAPDClient {
+
+  private static final int VIOLATIONS_FOUND = 4;
+  private static final int ERROR = 1;
+
+  private LAPDClient() {
+  }
+
+  public static void main(final String[] args) {
+
+    int port = LAPDDaemon.DEFAULT_PORT;
+    final List<String> requests = new ArrayList<String>();
+
+    try {
+      for (int i = 0; i < args.length; i++) {
+        if ("-port".equals(args[i])) {
+          port = Integer.parseInt(args[++i]);
+        } else if ("-stats".equals(args[i])) {
+          requests.add("STATS");
+        } else if ("-shutdown".equals(args[i])) {
+          requests.add("SHUTDOWN");
+        } else {
+          requests.add("ANALYZE " + new File(args[i]).getAbsolutePath());
+        }
+      }
+    } catch (final RuntimeException e) {
+      requests.clear();
+    }
+    if (requests.isEmpty()) {
+      System.err.println("usage: java " + LAPDClient.class.getName()
+          + " [-port n] path... | -stats | -shutdown");
+      System.exit(ERROR);
+    }
+
+    try {
+      System.exit(LAPDClient.send(port, requests));
+    } catch (final IOException e) {
+      System.err.println("LAPD daemon not reachable on port " + port + ": " + e);
+      System.exit(ERROR);
+    }
+  }
+
+  /*
+   * sends the requests one after the other and prints the answers, returning
+   * the exit status.
+   */
+  private static int send(final int port, final List<String> requests) throws IOException {
+
+    boolean violations = false;
+    boolean errors = false;
+
+    try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        BufferedReader in = new BufferedReader(
+            new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+
+      out.write("AUTH " + LAPDClient.readToken(port) + "\n");
+      out.flush();
+
+      final String answer = in.readLine();
+      if (!"OK".equals(answer)) {
+        System.err.println(answer == null ? "LAPD daemon closed the connection"
+            : answer.substring(answer.startsWith("ERROR ") ? "ERROR ".length() : 0));
+        return ERROR;
+      }
+
+      for (final String request : requests) {
+        out.write(request + "\n");
+        out.flush();
+
+        String line;
+        while ((line = in.readLine()) != null) {
+          if (line.startsWith("VIOLATION ")) {
+            System.out.println(line.substring("VIOLATION ".length()));
+            violations = true;
+          } else if (line.startsWith("ERROR ")) {
+            System.err.println(line.substring("ERROR ".length()));
+            errors = true;
+          } else {
+            if (!line.startsWith("DONE ")) {
+              System.out.println(line);
+            }
+            /* DONE, STATS and BYE end the answer */
+            break;
+          }
+        }
+      }
+    }
+    return errors ? ERROR : violations ? VIOLATIONS_FOUND : 0;
+  }
+
+  private static String readToken(final int port) throws IOException {
+    return new String(Files.readAllBytes(LAPDDaemon.tokenFile(port).toPath()),
+        StandardCharsets.US_ASCII).trim();
+  }
+
+}
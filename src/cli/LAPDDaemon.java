@@ -0,0 +1,388 @@
+package cli;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.AclEntry;
+import java.nio.file.attribute.AclEntryPermission;
+import java.nio.file.attribute.AclEntryType;
+import java.nio.file.attribute.AclFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.RuleViolation;
+import utils.CustomDictionary;
+
+/*
+ * long-lived analyzer keeping the NLP models, the dictionary and the caches of
+ * the rules in memory between analyses, for the small incremental checks
+ * (pre-commit hooks) that would otherwise spend most of their time loading
+ * them. It listens on a loopback port and answers a line protocol, see
+ * LAPDClient:
+ *
+ * ANALYZE path      the violations of the file or the tree, as VIOLATION lines
+ *                   streamed as the files are done, then DONE violations millis
+ * STATS             queue depth and latencies, as a STATS line
+ * SHUTDOWN          stops the daemon
+ *
+ * Errors are reported by ERROR lines, and every answer ends with a DONE, STATS
+ * or BYE line. Paths are resolved by the daemon, so clients send absolute
+ * paths.
+ *
+ * A connection starts with AUTH token, answered by OK; the daemon closes it
+ * otherwise. The token is random, written at startup to a file of ~/.lapd
+ * only its user can read, see tokenFile(), and removed at shutdown: other
+ * local users can neither stop the daemon nor read the identifiers and
+ * comments of the files it can read. The daemon is meant for a single user.
+ */
+public final class LAPDDaemon {
+
+  public static final int DEFAULT_PORT = 7077;
+
+  /* analyzed once at startup, so that the first request finds the models loaded */
+  private static final String WARM_UP_SOURCE = "import java.util.List;\n"
+      + "class WarmUp {\n  List<String> item;\n  boolean opened;\n"
+      + "  boolean isEmpty() { return item.isEmpty(); }\n"
+      + "  String getNames() { return null; }\n}\n";
+
+  private final Analyzer analyzer;
+  private final ServerSocket server;
+  private final File tokenFile;
+  private final byte[] token;
+  private final ThreadPoolExecutor workers;
+  private final ExecutorService connections = Executors.newCachedThreadPool();
+
+  private final AtomicLong requests = new AtomicLong();
+  private final AtomicLong files = new AtomicLong();
+  private final AtomicLong violations = new AtomicLong();
+  /* from the submission of a file to the end of its analysis, in microseconds */
+  private final AtomicLong totalLatency = new AtomicLong();
+  private final AtomicLong maxLatency = new AtomicLong();
+  private volatile boolean running = true;
+
+  public LAPDDaemon(final Analyzer analyzer, final int port, final int threads)
+      throws IOException {
+
+    this.analyzer = analyzer;
+    this.server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+    this.tokenFile = LAPDDaemon.tokenFile(this.server.getLocalPort());
+    this.token = LAPDDaemon.writeToken(this.tokenFile);
+    this.workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<Runnable>());
+  }
+
+  public static void main(final String[] args) {
+
+    int port = DEFAULT_PORT;
+    int threads = Runtime.getRuntime().availableProcessors();
+    String ruleset = Analyzer.DEFAULT_RULESET;
+    String encoding = "UTF-8";
+
+    try {
+      for (int i = 0; i < args.length; i++) {
+        if ("-port".equals(args[i])) {
+          port = Integer.parseInt(args[++i]);
+        } else if ("-threads".equals(args[i])) {
+          threads = Integer.parseInt(args[++i]);
+        } else if ("-dictionary".equals(args[i])) {
+          System.setProperty(CustomDictionary.DICTIONARY_DIRECTORY_PROPERTY, args[++i]);
+        } else if ("-ruleset".equals(args[i])) {
+          ruleset = args[++i];
+        } else if ("-encoding".equals(args[i])) {
+          encoding = args[++i];
+        } else {
+          throw new IllegalArgumentException(args[i]);
+        }
+      }
+    } catch (final RuntimeException e) {
+      System.err.println("usage: java " + LAPDDaemon.class.getName()
+          + " [-port n] [-threads n] [-dictionary dir] [-ruleset file] [-encoding name]");
+      System.exit(1);
+    }
+
+    try {
+      final LAPDDaemon daemon = new LAPDDaemon(new Analyzer(ruleset, encoding), port,
+          Math.max(1, threads));
+      daemon.warmUp();
+      System.err.println("LAPD daemon listening on " + daemon.server.getLocalSocketAddress());
+      daemon.serve();
+    } catch (final IOException e) {
+      e.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+  /*
+   * the file holding the token of the daemon listening on the port.
+   */
+  public static File tokenFile(final int port) {
+    return new File(System.getProperty("user.home"),
+        ".lapd" + File.separator + "daemon-" + port + ".token");
+  }
+
+  /*
+   * writes a new random token to the file, readable by its owner only: through
+   * its POSIX permissions, else through its ACL (Windows). The daemon does not
+   * start if the file system supports neither.
+   */
+  private static byte[] writeToken(final File file) throws IOException {
+
+    final byte[] random = new byte[32];
+    final StringBuilder hex = new StringBuilder();
+
+    new SecureRandom().nextBytes(random);
+    for (final byte b : random) {
+      hex.append(String.format("%02x", b & 0xff));
+    }
+
+    final Path directory = file.getAbsoluteFile().getParentFile().toPath();
+    Path temporary;
+
+    Files.createDirectories(directory);
+    try {
+      temporary = Files.createTempFile(directory, "daemon", ".token",
+          PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+    } catch (final UnsupportedOperationException e) {
+      /* not a POSIX file system */
+      temporary = Files.createTempFile(directory, "daemon", ".token");
+      try {
+        LAPDDaemon.restrictToOwner(temporary);
+      } catch (final IOException restrictionFailure) {
+        Files.delete(temporary);
+        throw restrictionFailure;
+      }
+    }
+    Files.write(temporary, hex.toString().getBytes(StandardCharsets.US_ASCII));
+    Files.move(temporary, file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    return hex.toString().getBytes(StandardCharsets.US_ASCII);
+  }
+
+  /*
+   * replaces the ACL of the file by a single entry granting its owner all the
+   * permissions.
+   */
+  private static void restrictToOwner(final Path file) throws IOException {
+
+    final AclFileAttributeView view = Files.getFileAttributeView(file,
+        AclFileAttributeView.class);
+
+    if (view == null) {
+      throw new IOException("cannot restrict the token file to its owner: " + file);
+    }
+
+    final AclEntry entry = AclEntry.newBuilder().setType(AclEntryType.ALLOW)
+        .setPrincipal(view.getOwner()).setPermissions(EnumSet.allOf(AclEntryPermission.class))
+        .build();
+
+    view.setAcl(Collections.singletonList(entry));
+  }
+
+  /*
+   * the token read from the file, compared in constant time.
+   */
+  private boolean isAuthorized(final String line) {
+    return line != null && line.startsWith("AUTH ") && MessageDigest.isEqual(this.token,
+        line.substring("AUTH ".length()).trim().getBytes(StandardCharsets.US_ASCII));
+  }
+
+  /*
+   * loads what the enabled detectors need: the tagger, the parser, WordNet.
+   */
+  public void warmUp() {
+    try {
+      this.analyzer.analyze(new File("WarmUp.java"),
+          new ByteArrayInputStream(WARM_UP_SOURCE.getBytes(StandardCharsets.UTF_8)));
+    } catch (final Exception e) {
+      e.printStackTrace();
+    }
+  }
+
+  /*
+   * accepts connections until a SHUTDOWN request.
+   */
+  public void serve() throws IOException {
+
+    while (this.running) {
+      final Socket socket;
+      try {
+        socket = this.server.accept();
+      } catch (final SocketException e) {
+        if (!this.running) {
+          break;
+        }
+        throw e;
+      }
+      this.connections.execute(new Runnable() {
+        @Override
+        public void run() {
+          LAPDDaemon.this.handle(socket);
+        }
+      });
+    }
+    this.workers.shutdown();
+    this.connections.shutdown();
+  }
+
+  private void handle(final Socket socket) {
+
+    try (Socket connection = socket;
+        BufferedReader in = new BufferedReader(
+            new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+        Writer out = new BufferedWriter(
+            new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8))) {
+
+      if (!this.isAuthorized(in.readLine())) {
+        out.write("ERROR unauthorized, see " + this.tokenFile + "\n");
+        out.flush();
+        return;
+      }
+      out.write("OK\n");
+      out.flush();
+
+      String line;
+      while ((line = in.readLine()) != null) {
+        if (line.startsWith("ANALYZE ")) {
+          this.analyze(line.substring("ANALYZE ".length()).trim(), out);
+        } else if ("STATS".equals(line.trim())) {
+          out.write(this.getStats() + "\n");
+        } else if ("SHUTDOWN".equals(line.trim())) {
+          out.write("BYE\n");
+          out.flush();
+          this.shutdown();
+          return;
+        } else {
+          out.write("ERROR unknown request: " + line + "\nDONE 0 0\n");
+        }
+        out.flush();
+      }
+    } catch (final IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /*
+   * submits the files of the path to the workers and streams their violations
+   * back in the order of the files.
+   */
+  private void analyze(final String path, final Writer out) throws IOException {
+
+    final long start = System.nanoTime();
+    final List<File> sources;
+    final List<Future<Report>> reports = new ArrayList<Future<Report>>();
+    long found = 0;
+
+    this.requests.incrementAndGet();
+    try {
+      sources = Analyzer.collectSources(Collections.singletonList(path));
+    } catch (final IOException e) {
+      out.write("ERROR " + path + ": " + e + "\nDONE 0 0\n");
+      return;
+    }
+
+    for (final File source : sources) {
+      final long submitted = System.nanoTime();
+      reports.add(this.workers.submit(new Callable<Report>() {
+        @Override
+        public Report call() throws Exception {
+          try {
+            return LAPDDaemon.this.analyzer.analyze(source);
+          } finally {
+            LAPDDaemon.this.recordLatency(System.nanoTime() - submitted);
+          }
+        }
+      }));
+    }
+
+    for (int i = 0; i < reports.size(); i++) {
+      try {
+        final Report report = reports.get(i).get();
+
+        for (final RuleViolation violation : report) {
+          out.write("VIOLATION " + LAPDRunner.format(violation) + "\n");
+          found++;
+        }
+        for (final Iterator<Report.ProcessingError> errors = report.errors(); errors
+            .hasNext();) {
+          final Report.ProcessingError error = errors.next();
+          out.write("ERROR " + error.getFile() + ": " + error.getMsg() + "\n");
+        }
+      } catch (final ExecutionException e) {
+        out.write("ERROR " + sources.get(i).getPath() + ": " + e.getCause() + "\n");
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        out.write("ERROR interrupted\n");
+        break;
+      }
+      out.flush();
+    }
+    this.violations.addAndGet(found);
+    out.write("DONE " + found + " " + (System.nanoTime() - start) / 1000000 + "\n");
+  }
+
+  private void recordLatency(final long nanos) {
+
+    final long micros = nanos / 1000;
+
+    this.files.incrementAndGet();
+    this.totalLatency.addAndGet(micros);
+
+    long max;
+    while (micros > (max = this.maxLatency.get())
+        && !this.maxLatency.compareAndSet(max, micros)) {
+      // another worker raised the maximum meanwhile
+    }
+  }
+
+  public String getStats() {
+
+    final long analyzed = this.files.get();
+
+    return "STATS queued=" + this.workers.getQueue().size() + " active="
+        + this.workers.getActiveCount() + " requests=" + this.requests.get() + " files="
+        + analyzed + " violations=" + this.violations.get() + " meanLatencyMillis="
+        + (analyzed == 0 ? 0 : this.totalLatency.get() / analyzed / 1000)
+        + " maxLatencyMillis=" + this.maxLatency.get() / 1000;
+  }
+
+  public void shutdown() {
+
+    this.running = false;
+    this.tokenFile.delete();
+    try {
+      this.server.close();
+    } catch (final IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+}
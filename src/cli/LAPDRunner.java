@@ -0,0 +1,257 @@
+package cli;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.RuleViolation;
+import rules.AbstractLAPDRule;
+import rules.DiffScope;
+import rules.ViolationStream;
+import utils.CustomDictionary;
+
+/*
+ * command line analyzer running the LAPD rules on a source tree without an IDE:
+ *
+ * java cli.LAPDRunner [-threads n] [-pipeline [-inflight n]] [-dictionary dir] [-ruleset file]
+ *     [-encoding name] [-stream file [-format jsonl|sarif]]
+ *     [-diff file | -revisions range [-repository dir]] path...
+ *
+ * The files are analyzed by a pool of workers and the violations printed as
+ * file:line: message as soon as a file is done. With -pipeline, reading and
+ * parsing run apart from the analysis, see Pipeline, and the time spent in
+ * each stage is printed at the end. With -stream, the rules write the
+ * violations to the file as they find them, see ViolationStream, and nothing
+ * is printed. With -diff (a unified diff, paths relative to the working
+ * directory) or -revisions (given to git diff in the repository), only the
+ * changed files are analyzed, and in them only the members with changed
+ * lines; the paths default to the changed files. The exit status is 4 if
+ * there are violations, 1 on a usage or processing error, as with PMD.
+ */
+public final class LAPDRunner implements Pipeline.Sink {
+
+  private static final int VIOLATIONS_FOUND = 4;
+  private static final int ERROR = 1;
+
+  private final Analyzer analyzer;
+  private final PrintStream out;
+  private final AtomicLong violations = new AtomicLong();
+  private final AtomicLong errors = new AtomicLong();
+
+  public LAPDRunner(final Analyzer analyzer, final PrintStream out) {
+    this.analyzer = analyzer;
+    this.out = out;
+  }
+
+  public static void main(final String[] args) {
+
+    int threads = Runtime.getRuntime().availableProcessors();
+    String ruleset = Analyzer.DEFAULT_RULESET;
+    String encoding = "UTF-8";
+    boolean pipeline = false;
+    int maxInFlight = 0;
+    String diff = null;
+    String revisions = null;
+    String repository = ".";
+    final List<String> paths = new ArrayList<String>();
+
+    try {
+      for (int i = 0; i < args.length; i++) {
+        if ("-threads".equals(args[i])) {
+          threads = Integer.parseInt(args[++i]);
+        } else if ("-pipeline".equals(args[i])) {
+          pipeline = true;
+        } else if ("-inflight".equals(args[i])) {
+          maxInFlight = Integer.parseInt(args[++i]);
+        } else if ("-dictionary".equals(args[i])) {
+          System.setProperty(CustomDictionary.DICTIONARY_DIRECTORY_PROPERTY, args[++i]);
+        } else if ("-ruleset".equals(args[i])) {
+          ruleset = args[++i];
+        } else if ("-encoding".equals(args[i])) {
+          encoding = args[++i];
+        } else if ("-stream".equals(args[i])) {
+          System.setProperty(AbstractLAPDRule.VIOLATION_STREAM_PROPERTY, args[++i]);
+        } else if ("-format".equals(args[i])) {
+          System.setProperty(AbstractLAPDRule.VIOLATION_STREAM_FORMAT_PROPERTY, args[++i]);
+        } else if ("-diff".equals(args[i])) {
+          diff = args[++i];
+        } else if ("-revisions".equals(args[i])) {
+          revisions = args[++i];
+        } else if ("-repository".equals(args[i])) {
+          repository = args[++i];
+        } else {
+          paths.add(args[i]);
+        }
+      }
+    } catch (final ArrayIndexOutOfBoundsException | NumberFormatException e) {
+      paths.clear();
+      diff = null;
+      revisions = null;
+    }
+    if (paths.isEmpty() && diff == null && revisions == null || diff != null && revisions != null
+        || threads < 1 || maxInFlight < 0) {
+      System.err.println("usage: java " + LAPDRunner.class.getName()
+          + " [-threads n] [-pipeline [-inflight n]] [-dictionary dir] [-ruleset file]"
+          + " [-encoding name] [-stream file [-format jsonl|sarif]]"
+          + " [-diff file | -revisions range [-repository dir]] path...");
+      System.exit(ERROR);
+    }
+
+    final Analyzer analyzer = new Analyzer(ruleset, encoding);
+    final LAPDRunner runner = new LAPDRunner(analyzer, System.out);
+
+    try {
+      final DiffScope scope = diff != null ? LAPDRunner.readDiff(diff)
+          : revisions != null ? DiffScope.fromGit(new File(repository), revisions) : null;
+      final List<File> sources = LAPDRunner.selectSources(paths, scope);
+
+      DiffScope.install(scope);
+
+      if (pipeline) {
+        final Pipeline stages = new Pipeline(analyzer, runner, threads,
+            maxInFlight > 0 ? maxInFlight : 4 * threads);
+        stages.run(sources);
+        System.err.println(stages);
+      } else {
+        runner.run(sources, threads);
+      }
+    } catch (final IOException | InterruptedException e) {
+      e.printStackTrace();
+      System.exit(ERROR);
+    }
+    System.out.flush();
+
+    final long streamed = ViolationStream.closeAll();
+
+    if (runner.getErrors() > 0) {
+      System.exit(ERROR);
+    }
+    System.exit(runner.getViolations() + streamed > 0 ? VIOLATIONS_FOUND : 0);
+  }
+
+  private static DiffScope readDiff(final String diff) throws IOException {
+    try (Reader in = new InputStreamReader(new FileInputStream(diff), StandardCharsets.UTF_8)) {
+      return DiffScope.parse(in, new File("."));
+    }
+  }
+
+  /*
+   * the sources of the paths, the changed ones only if there is a scope; the
+   * changed sources that still exist if there are no paths.
+   */
+  private static List<File> selectSources(final List<String> paths, final DiffScope scope)
+      throws IOException {
+
+    final List<File> sources = new ArrayList<File>();
+
+    if (scope == null) {
+      return Analyzer.collectSources(paths);
+    }
+    if (paths.isEmpty()) {
+      for (final File file : scope.getFiles()) {
+        if (file.isFile() && file.getName().endsWith(".java")) {
+          sources.add(file);
+        }
+      }
+      return sources;
+    }
+    for (final File source : Analyzer.collectSources(paths)) {
+      if (scope.contains(source)) {
+        sources.add(source);
+      }
+    }
+    return sources;
+  }
+
+  /*
+   * analyzes the files with the given number of workers and waits for them.
+   */
+  public void run(final List<File> sources, final int threads) throws InterruptedException {
+
+    final ExecutorService workers = Executors.newFixedThreadPool(threads);
+
+    for (final File source : sources) {
+      workers.execute(new Runnable() {
+        @Override
+        public void run() {
+          LAPDRunner.this.analyze(source);
+        }
+      });
+    }
+    workers.shutdown();
+    workers.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+  }
+
+  private void analyze(final File source) {
+
+    final Report report;
+
+    try {
+      report = this.analyzer.analyze(source);
+    } catch (final Exception e) {
+      this.fail(source, e);
+      return;
+    }
+    this.report(source, report);
+  }
+
+  @Override
+  public void fail(final File source, final Throwable e) {
+    this.errors.incrementAndGet();
+    System.err.println(source.getPath() + ": " + e);
+  }
+
+  /*
+   * prints the violations of a file together, so that the lines of two
+   * workers do not interleave.
+   */
+  @Override
+  public void report(final File source, final Report report) {
+
+    final StringBuilder lines = new StringBuilder();
+
+    for (final RuleViolation violation : report) {
+      lines.append(LAPDRunner.format(violation)).append(System.lineSeparator());
+      this.violations.incrementAndGet();
+    }
+    for (final Iterator<Report.ProcessingError> i = report.errors(); i.hasNext();) {
+      final Report.ProcessingError error = i.next();
+      this.errors.incrementAndGet();
+      System.err.println(error.getFile() + ": " + error.getMsg());
+    }
+    if (lines.length() > 0) {
+      synchronized (this.out) {
+        this.out.print(lines);
+      }
+    }
+  }
+
+  /*
+   * file:line: message, on a single line.
+   */
+  static String format(final RuleViolation violation) {
+    return violation.getFilename() + ':' + violation.getBeginLine() + ":\t"
+        + violation.getDescription().replace('\n', ' ').replace('\r', ' ');
+  }
+
+  public long getViolations() {
+    return this.violations.get();
+  }
+
+  public long getErrors() {
+    return this.errors.get();
+  }
+
+}
@@ -0,0 +1,300 @@
+package cli;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.lang.ast.Node;
+
+/*
+ * headless scan in separate stages:
+ *
+ * read, parse   a virtual thread per file when the JVM has them (Java 21),
+ *               else a cached pool: reading mostly waits on the disk. The
+ *               symbol table is built here too, see Analyzer.parse
+ * analyze       a fixed pool of platform threads running the rules, where the
+ *               tagger and WordNet work happens
+ * report        a single thread handing the reports to the sink
+ *
+ * At most maxInFlight files are between reading and reporting: when analysis
+ * or reporting falls behind, reading waits for a permit. Each stage counts
+ * its files, the time spent in it and the time files waited before it, so that
+ * the stage where files queue up shows in toString().
+ */
+public final class Pipeline {
+
+  /*
+   * receives the results on the report thread, one file at a time. A file
+   * failing with an Error, such as a StackOverflowError on a deeply nested
+   * file, is reported by fail() too.
+   */
+  public interface Sink {
+
+    void report(File source, Report report);
+
+    void fail(File source, Throwable e);
+  }
+
+  private static final Result END = new Result(null, null, null);
+
+  private final Analyzer analyzer;
+  private final Sink sink;
+  private final int analysisThreads;
+  private final int maxInFlight;
+  private final Semaphore inFlight;
+  private final BlockingQueue<Result> results;
+
+  private final Stage reading = new Stage("read");
+  private final Stage parsing = new Stage("parse");
+  private final Stage analysis = new Stage("analyze");
+  private final Stage reporting = new Stage("report");
+
+  public Pipeline(final Analyzer analyzer, final Sink sink, final int analysisThreads,
+      final int maxInFlight) {
+
+    this.analyzer = analyzer;
+    this.sink = sink;
+    this.analysisThreads = analysisThreads;
+    this.maxInFlight = maxInFlight;
+    this.inFlight = new Semaphore(maxInFlight);
+    this.results = new ArrayBlockingQueue<Result>(maxInFlight + 1);
+  }
+
+  /*
+   * virtual threads are looked up reflectively, the fragment targets Java 8.
+   */
+  private static ExecutorService newReaderExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+          .invoke(null);
+    } catch (final ReflectiveOperationException e) {
+      return Executors.newCachedThreadPool();
+    }
+  }
+
+  /*
+   * runs the files through the stages and returns once all are reported.
+   */
+  public void run(final List<File> sources) throws InterruptedException {
+
+    final ExecutorService readers = Pipeline.newReaderExecutor();
+    final ThreadPoolExecutor analyzers = new ThreadPoolExecutor(this.analysisThreads,
+        this.analysisThreads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+    final Thread reporter = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        Pipeline.this.report();
+      }
+    }, "lapd-report");
+
+    reporter.start();
+    try {
+      for (final File source : sources) {
+        this.inFlight.acquire();
+
+        final long entered = this.reading.enter();
+        readers.execute(new Runnable() {
+          @Override
+          public void run() {
+            Pipeline.this.read(source, entered, analyzers);
+          }
+        });
+      }
+      /* every permit is back once the last file is reported */
+      this.inFlight.acquire(this.maxInFlight);
+      this.inFlight.release(this.maxInFlight);
+    } finally {
+      readers.shutdown();
+      analyzers.shutdown();
+      this.results.put(END);
+      reporter.join();
+    }
+  }
+
+  private void read(final File source, final long entered, final ThreadPoolExecutor analyzers) {
+
+    final byte[] bytes;
+    final Node root;
+    long started = this.reading.start(entered);
+
+    try {
+      bytes = Files.readAllBytes(source.toPath());
+    } catch (final IOException | RuntimeException | Error e) {
+      this.reading.end(started);
+      this.publish(new Result(source, null, e));
+      return;
+    }
+    this.reading.end(started);
+
+    started = this.parsing.start(this.parsing.enter());
+    try {
+      root = this.analyzer.parse(source,
+          new InputStreamReader(new ByteArrayInputStream(bytes), this.analyzer.getEncoding()));
+    } catch (final IOException | RuntimeException | Error e) {
+      this.parsing.end(started);
+      this.publish(new Result(source, null, e));
+      return;
+    }
+    this.parsing.end(started);
+
+    final long parsed = this.analysis.enter();
+    try {
+      analyzers.execute(new Runnable() {
+        @Override
+        public void run() {
+          Pipeline.this.analyze(source, root, parsed);
+        }
+      });
+    } catch (final RuntimeException | Error e) {
+      this.publish(new Result(source, null, e));
+    }
+  }
+
+  private void analyze(final File source, final Node root, final long entered) {
+
+    final long started = this.analysis.start(entered);
+    Result result;
+
+    try {
+      result = new Result(source, this.analyzer.analyze(source, root), null);
+    } catch (final Exception | Error e) {
+      result = new Result(source, null, e);
+    }
+    this.analysis.end(started);
+    this.publish(result);
+  }
+
+  /*
+   * blocks while the report queue is full. Every file started is published
+   * once, the report thread gives its permit back.
+   */
+  private void publish(final Result result) {
+
+    result.entered = this.reporting.enter();
+    try {
+      this.results.put(result);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      this.inFlight.release();
+    }
+  }
+
+  private void report() {
+
+    while (true) {
+      final Result result;
+      try {
+        result = this.results.take();
+      } catch (final InterruptedException e) {
+        return;
+      }
+      if (result == END) {
+        return;
+      }
+
+      final long started = this.reporting.start(result.entered);
+      try {
+        if (result.failure != null) {
+          this.sink.fail(result.source, result.failure);
+        } else {
+          this.sink.report(result.source, result.report);
+        }
+      } catch (final RuntimeException | Error e) {
+        /* the reporter goes on, the other files would never be reported */
+        e.printStackTrace();
+      } finally {
+        this.reporting.end(started);
+        this.inFlight.release();
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return this.reading + "; " + this.parsing + "; " + this.analysis + "; " + this.reporting;
+  }
+
+  private static final class Result {
+
+    private final File source;
+    private final Report report;
+    private final Throwable failure;
+    private long entered;
+
+    private Result(final File source, final Report report, final Throwable failure) {
+      this.source = source;
+      this.report = report;
+      this.failure = failure;
+    }
+  }
+
+  /*
+   * counters of a stage, updated by its threads.
+   */
+  private static final class Stage {
+
+    private final String name;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger maxQueued = new AtomicInteger();
+    private final AtomicLong files = new AtomicLong();
+    private final AtomicLong busyNanos = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+
+    private Stage(final String name) {
+      this.name = name;
+    }
+
+    /*
+     * a file is handed to the stage; returns the time it entered.
+     */
+    private long enter() {
+
+      final int depth = this.queued.incrementAndGet();
+
+      int max;
+      while (depth > (max = this.maxQueued.get()) && !this.maxQueued.compareAndSet(max, depth)) {
+        // another thread raised the maximum meanwhile
+      }
+      return System.nanoTime();
+    }
+
+    /*
+     * the stage starts working on a file; returns the time it started.
+     */
+    private long start(final long entered) {
+
+      final long now = System.nanoTime();
+
+      this.queued.decrementAndGet();
+      this.waitNanos.addAndGet(now - entered);
+      return now;
+    }
+
+    private void end(final long started) {
+      this.files.incrementAndGet();
+      this.busyNanos.addAndGet(System.nanoTime() - started);
+    }
+
+    @Override
+    public String toString() {
+      return this.name + ": " + this.files.get() + " files, "
+          + this.busyNanos.get() / 1000000 + " ms busy, " + this.waitNanos.get() / 1000000
+          + " ms waiting, queue up to " + this.maxQueued.get();
+    }
+  }
+
+}
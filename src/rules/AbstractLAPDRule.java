@@ -1,32 +1,80 @@
 package rules;
 
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Vector;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import net.sourceforge.pmd.Report;
 import net.sourceforge.pmd.RuleContext;
 import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.lang.java.ast.ASTClassOrInterfaceBodyDeclaration;
+import net.sourceforge.pmd.lang.java.ast.ASTCompilationUnit;
+import net.sourceforge.pmd.lang.java.ast.ASTFieldDeclaration;
+import net.sourceforge.pmd.lang.java.ast.ASTMethodDeclaration;
 import net.sourceforge.pmd.lang.java.ast.ASTResultType;
 import net.sourceforge.pmd.lang.java.ast.ASTType;
 import net.sourceforge.pmd.lang.java.ast.ASTTypeArgument;
 import net.sourceforge.pmd.lang.java.ast.Comment;
+import net.sourceforge.pmd.lang.java.ast.SingleLineComment;
 import net.sourceforge.pmd.lang.java.rule.AbstractJavaRule;
 import net.sourceforge.pmd.properties.PropertyDescriptor;
 import net.sourceforge.pmd.properties.PropertyFactory;
+import utils.BoundedCache;
 import utils.CustomDictionary;
 import utils.CustomParser;
+import utils.IdentifierScanner;
 import utils.Splitter;
+import utils.TermSet;
+import utils.Terms;
 
 public abstract class AbstractLAPDRule extends AbstractJavaRule {
 
-  protected static List<String> collectionKeywords;
-  protected static List<String> returningKeywords;
-  protected static List<String> ignoreForAntonymsKeywords;
-  protected static List<String> validatingKeywords;
-  protected static List<String> ignoreForConditionKeywords;
-  protected static List<String> aggregationKeywords;
-  protected static List<String> predicateKeywords;
+  protected static final Logger LOG = Logger.getLogger(AbstractLAPDRule.class.getName());
+
+  /*
+   * configuration of this rule instance, read from the properties in start().
+   * PMD gives each analysis thread its own copy of the rule, so these are
+   * instance fields holding unmodifiable lists.
+   */
+  protected List<String> collectionKeywords;
+  protected List<String> returningKeywords;
+  protected List<String> ignoreForAntonymsKeywords;
+  protected List<String> validatingKeywords;
+  protected List<String> ignoreForConditionKeywords;
+  protected List<String> aggregationKeywords;
+  protected List<String> predicateKeywords;
+  /* the keywords compared to whole terms, as sets of term ids */
+  protected TermSet collectionTerms;
+  protected TermSet returningTerms;
+  protected TermSet ignoreForAntonymsTerms;
+  protected TermSet aggregationTerms;
+  /* identifies the keywords and the POS engine in the keys of the verdict caches */
+  protected String configuration;
+  /* true if an enabled detector of the rule tags identifiers, see planDetectors() */
+  protected boolean needsTagger;
+  /* tags with the engine and cache file of the rule, null if no detector tags */
+  protected CustomParser parser;
+  /* the antonym verdicts cached with the size and eviction of the rule */
+  protected BoundedCache<Long, Boolean> antonymVerdicts;
+  protected int verdictCacheSize;
+  /* drops and evaluations of the detectors of this rule instance */
+  final DetectorStats stats = new DetectorStats();
+  /* receives the violations in place of the PMD report if a stream file is set */
+  private ViolationStream violationStream;
+  /* the lines of the current file with a NOPMD comment, when streaming */
+  private Map<Integer, String> suppressedLines;
+  /* the members to analyze when only changed lines are, see DiffScope */
+  private DiffScope diffScope;
+  /* the changed lines of the current file, null to analyze every member */
+  private int[] changedLines;
 
   protected final static PropertyDescriptor<List<String>> COLLECTION_KEYWORDS = PropertyFactory
       .stringListProperty("collectionKeywords").desc("keywords to use for collection objects")
@@ -62,9 +110,73 @@ public abstract class AbstractLAPDRule extends AbstractJavaRule {
       .stringListProperty("predicateKeywords").desc("predicate keywords")
       .defaultValue(Arrays.asList("is", "has")).build();
 
+  protected final static PropertyDescriptor<String> POS_ENGINE = PropertyFactory
+      .stringProperty("posEngine")
+      .desc("engine used to tag the terms: 'tagger' (maximum entropy tagger) or 'parser' (PCFG)")
+      .defaultValue(CustomParser.TAGGER_ENGINE).build();
+
+  protected final static PropertyDescriptor<Integer> POS_BATCH_SIZE = PropertyFactory
+      .intProperty("posBatchSize")
+      .desc("maximum number of identifiers of a file tagged in one call to the engine")
+      .defaultValue(256).build();
+
+  protected final static PropertyDescriptor<Integer> ANTONYM_CACHE_SIZE = PropertyFactory
+      .intProperty("antonymCacheSize")
+      .desc("maximum number of word pairs whose antonym verdict is cached")
+      .defaultValue(CustomDictionary.DEFAULT_ANTONYM_CACHE_SIZE).build();
+
+  protected final static PropertyDescriptor<String> ANTONYM_CACHE_EVICTION = PropertyFactory
+      .stringProperty("antonymCacheEviction")
+      .desc("eviction of the antonym verdict cache: 'lru' or 'fifo'").defaultValue("lru")
+      .build();
+
+  protected final static PropertyDescriptor<Integer> VERDICT_CACHE_SIZE = PropertyFactory
+      .intProperty("verdictCacheSize")
+      .desc("maximum number of signatures whose verdict is cached, per detector")
+      .defaultValue(VerdictCache.DEFAULT_SIZE).build();
+
+  protected final static PropertyDescriptor<String> POS_CACHE_FILE = PropertyFactory
+      .stringProperty("posCacheFile")
+      .desc("file storing the tagged identifiers of the engine between runs, empty to disable;"
+          + " a file holds the tags of the first engine using it")
+      .defaultValue("").build();
+
+  protected final static PropertyDescriptor<String> VIOLATION_STREAM = PropertyFactory
+      .stringProperty("violationStream")
+      .desc("file receiving the violations as they are found instead of the PMD report, empty"
+          + " to use the system property " + AbstractLAPDRule.VIOLATION_STREAM_PROPERTY)
+      .defaultValue("").build();
+
+  protected final static PropertyDescriptor<String> VIOLATION_STREAM_FORMAT = PropertyFactory
+      .stringProperty("violationStreamFormat")
+      .desc("format of the violation stream: 'jsonl' (JSON Lines) or 'sarif'")
+      .defaultValue(ViolationStream.JSON_LINES).build();
+
+  protected final static PropertyDescriptor<Integer> VIOLATION_STREAM_BUFFER = PropertyFactory
+      .intProperty("violationStreamBuffer")
+      .desc("maximum number of violations waiting to be written before the rules wait")
+      .defaultValue(ViolationStream.DEFAULT_BUFFER).build();
+
+  protected final static PropertyDescriptor<String> DIFF_FILE = PropertyFactory
+      .stringProperty("diffFile")
+      .desc("unified diff whose changed members are the only ones analyzed, empty for all")
+      .defaultValue("").build();
+
+  /* set by the command line runner, used when the violationStream property is empty */
+  public final static String VIOLATION_STREAM_PROPERTY = "lapd.violationStream";
+  public final static String VIOLATION_STREAM_FORMAT_PROPERTY = "lapd.violationStreamFormat";
+
   protected final static String SIGNATURE = "Signature: {0}.{1}: {2}";
 
+  private final static String NOPMD = "NOPMD";
+
+  /*
+   * the rules are visited through PMD's rule chain: the compilation unit first,
+   * then the node types registered by the subclass, without walking the tree
+   * themselves.
+   */
   protected AbstractLAPDRule() {
+    addRuleChainVisit(ASTCompilationUnit.class);
     definePropertyDescriptor(COLLECTION_KEYWORDS);
     definePropertyDescriptor(RETURNING_KEYWORDS);
     definePropertyDescriptor(IGNORE_FOR_ANTONYMS_KEYWORDS);
@@ -72,92 +184,318 @@ public abstract class AbstractLAPDRule extends AbstractJavaRule {
     definePropertyDescriptor(IGNORE_FOR_CONDITION_KEYWORDS);
     definePropertyDescriptor(AGGREGATION_KEYWORDS);
     definePropertyDescriptor(PREDICATE_KEYWORDS);
-  }
-
-  protected static void init() {
-    CustomParser.getInstance();
-    CustomDictionary.getInstance();
+    definePropertyDescriptor(POS_ENGINE);
+    definePropertyDescriptor(POS_CACHE_FILE);
+    definePropertyDescriptor(POS_BATCH_SIZE);
+    definePropertyDescriptor(ANTONYM_CACHE_SIZE);
+    definePropertyDescriptor(ANTONYM_CACHE_EVICTION);
+    definePropertyDescriptor(VERDICT_CACHE_SIZE);
+    definePropertyDescriptor(VIOLATION_STREAM);
+    definePropertyDescriptor(VIOLATION_STREAM_FORMAT);
+    definePropertyDescriptor(VIOLATION_STREAM_BUFFER);
+    definePropertyDescriptor(DIFF_FILE);
   }
 
   @Override
   public void start(RuleContext ctx) {
-    collectionKeywords = getProperty(COLLECTION_KEYWORDS);
-    returningKeywords = getProperty(RETURNING_KEYWORDS);
-    ignoreForAntonymsKeywords = getProperty(IGNORE_FOR_ANTONYMS_KEYWORDS);
-    validatingKeywords = getProperty(VALIDATING_KEYWORDS);
-    ignoreForConditionKeywords = getProperty(IGNORE_FOR_CONDITION_KEYWORDS);
-    aggregationKeywords = getProperty(AGGREGATION_KEYWORDS);
-    predicateKeywords = getProperty(PREDICATE_KEYWORDS);
+    collectionKeywords = getKeywords(COLLECTION_KEYWORDS);
+    returningKeywords = getKeywords(RETURNING_KEYWORDS);
+    ignoreForAntonymsKeywords = getKeywords(IGNORE_FOR_ANTONYMS_KEYWORDS);
+    validatingKeywords = getKeywords(VALIDATING_KEYWORDS);
+    ignoreForConditionKeywords = getKeywords(IGNORE_FOR_CONDITION_KEYWORDS);
+    aggregationKeywords = getKeywords(AGGREGATION_KEYWORDS);
+    predicateKeywords = getKeywords(PREDICATE_KEYWORDS);
+    collectionTerms = TermSet.of(collectionKeywords);
+    returningTerms = TermSet.of(returningKeywords);
+    ignoreForAntonymsTerms = TermSet.of(ignoreForAntonymsKeywords);
+    aggregationTerms = TermSet.of(aggregationKeywords);
+    needsTagger = planDetectors();
+    parser = needsTagger
+        ? CustomParser.getInstance(getProperty(POS_ENGINE), getProperty(POS_CACHE_FILE))
+        : null;
+    antonymVerdicts = CustomDictionary.getAntonymCache(getProperty(ANTONYM_CACHE_SIZE),
+        BoundedCache.Eviction.fromName(getProperty(ANTONYM_CACHE_EVICTION)));
+    configuration = VerdictCache.configurationId(Arrays.asList(collectionKeywords,
+        returningKeywords, ignoreForAntonymsKeywords, validatingKeywords,
+        ignoreForConditionKeywords, aggregationKeywords, predicateKeywords,
+        Collections.singletonList(getProperty(POS_ENGINE))));
+    verdictCacheSize = getProperty(VERDICT_CACHE_SIZE);
+    violationStream = openViolationStream();
+    diffScope = loadDiffScope();
   }
 
-  protected static boolean isCollection(final String nodeType) {
+  /*
+   * the scope of the diffFile property, else the one installed by the command
+   * line runner.
+   */
+  private DiffScope loadDiffScope() {
 
-    if (nodeType.contains("[")) {
-      return true;
+    final String diffFile = getProperty(DIFF_FILE);
+
+    if (diffFile.isEmpty()) {
+      return DiffScope.getInstalled();
+    }
+    try {
+      return DiffScope.load(diffFile);
+    } catch (final IOException e) {
+      e.printStackTrace();
+      return null;
     }
+  }
 
-    Vector<String> splitted = new Vector<String>();
-    final int index = nodeType.indexOf("<");
+  /*
+   * the stream named by the rule properties, else by the system properties;
+   * null to report the violations to PMD.
+   */
+  private ViolationStream openViolationStream() {
 
-    if (index != -1) {
-      splitted = Splitter.variableSplitter(nodeType.substring(0, index));
-    } else {
-      splitted = Splitter.variableSplitter(nodeType);
+    String path = getProperty(VIOLATION_STREAM);
+    String format = getProperty(VIOLATION_STREAM_FORMAT);
+
+    if (path.isEmpty()) {
+      path = System.getProperty(VIOLATION_STREAM_PROPERTY, "");
+      format = System.getProperty(VIOLATION_STREAM_FORMAT_PROPERTY, format);
+    }
+    if (path.isEmpty()) {
+      return null;
+    }
+    try {
+      return ViolationStream.open(path, format, getProperty(VIOLATION_STREAM_BUFFER));
+    } catch (final IOException e) {
+      e.printStackTrace();
+      return null;
     }
+  }
+
+  /*
+   * reports a violation of the detector: args are the class, the name and the
+   * type of the member, then the arguments of the message, and antonyms the
+   * pair found by the antonym detectors, else null.
+   *
+   * A streamed violation is first added to a report of its own, with the NOPMD
+   * lines of the file, so that PMD drops it as it would from the file report:
+   * @SuppressWarnings, NOPMD comments, violationSuppressRegex and
+   * violationSuppressXPath.
+   */
+  protected void reportViolation(final Object data, final Node node, final String detector,
+      final String message, final Object[] args, final List<String> antonyms) {
 
-    if (splitted.size() <= 0) {
-      return false;
+    if (violationStream == null) {
+      addViolationWithMessage(data, node, "LAPD - " + detector + ": " + message, args);
+      return;
     }
 
-    for (final String word : collectionKeywords) {
-      if (splitted.lastElement().equalsIgnoreCase(word)) {
-        return true;
-      }
+    final RuleContext ctx = (RuleContext) data;
+    final Report report = ctx.getReport();
+    final Report single = new Report();
+
+    single.suppress(suppressedLines);
+    ctx.setReport(single);
+    try {
+      addViolationWithMessage(data, node, "LAPD - " + detector + ": " + message, args);
+    } finally {
+      ctx.setReport(report);
     }
-    return false;
+    if (single.getViolations().isEmpty()) {
+      return;
+    }
+    violationStream.write(detector, getName(), ((RuleContext) data).getSourceCodeFilename(),
+        node.getBeginLine(), node.getEndLine(), (String) args[0], (String) args[1],
+        (String) args[2], antonyms,
+        "LAPD - " + detector + ": " + MessageFormat.format(message, args));
   }
 
-  protected static boolean containsCollectionKeyword(final String item, final boolean substring) {
+  /*
+   * reads the properties enabling the detectors of the rule, so that visiting
+   * a node does not consider the disabled ones. Returns true if an enabled
+   * detector tags identifiers: otherwise the files are not tagged beforehand
+   * and the tagger and parser models are never loaded.
+   */
+  protected abstract boolean planDetectors();
+
+  /*
+   * tags the identifiers of the whole file in batches before the detectors
+   * visit its members, so that they read the tags from the parser cache.
+   */
+  @Override
+  public Object visit(final ASTCompilationUnit node, final Object data) {
 
-    for (final String word : collectionKeywords) {
+    changedLines = diffScope == null ? null
+        : diffScope.linesOf(((RuleContext) data).getSourceCodeFilename());
+    suppressedLines = violationStream == null ? null : getSuppressedLines(node);
 
-      if (word.equalsIgnoreCase(item) || substring && item.toLowerCase().contains(word)) {
-        return true;
+    if (!needsTagger) {
+      return data;
+    }
+
+    final List<Vector<String>> identifiers = new ArrayList<Vector<String>>();
+
+    collectIdentifiers(node, identifiers);
+    parser.tagAll(identifiers, getProperty(POS_BATCH_SIZE));
+    return data;
+  }
+
+  /*
+   * the lines PMD's Java parser suppresses: those with a single line comment
+   * holding the default NOPMD marker, with the text after it.
+   */
+  private static Map<Integer, String> getSuppressedLines(final ASTCompilationUnit node) {
+
+    final Map<Integer, String> lines = new HashMap<Integer, String>();
+
+    for (final Comment comment : node.getComments()) {
+      if (comment instanceof SingleLineComment) {
+        final String image = comment.getImage();
+        final int marker = image.indexOf(NOPMD);
+
+        if (marker != -1) {
+          lines.put(comment.getBeginLine(), image.substring(marker + NOPMD.length()));
+        }
       }
     }
-    return false;
+    return lines;
+  }
+
+  /*
+   * true if the member is to be analyzed: always, unless a diff scope is set
+   * and none of its lines changed. The lines of a member of a class start
+   * after the previous member, so that its comments are part of it; a local
+   * variable only spans its own lines.
+   */
+  protected boolean isChanged(final Node member) {
+
+    if (changedLines == null) {
+      return true;
+    }
+
+    int begin = member.getBeginLine();
+    final Node body = member.getFirstParentOfType(ASTClassOrInterfaceBodyDeclaration.class);
+
+    if (body != null && (member instanceof ASTMethodDeclaration
+        || member.jjtGetParent() instanceof ASTFieldDeclaration)) {
+      final int index = body.jjtGetChildIndex();
+
+      begin = index > 0 ? body.jjtGetParent().jjtGetChild(index - 1).getEndLine() + 1
+          : body.jjtGetParent().getBeginLine();
+    }
+    return DiffScope.intersects(changedLines, begin, member.getEndLine());
   }
 
-  protected static boolean isReturning(final String methodName) {
+  /*
+   * adds the split identifiers of the file that the enabled detectors of the
+   * rule will tag: those passing the lexical gate the detector checks before
+   * tagging, computed by the same predicate. A file where no identifier passes
+   * a gate is not tagged, and the models are not loaded for it.
+   */
+  protected abstract void collectIdentifiers(ASTCompilationUnit node,
+      List<Vector<String>> identifiers);
+
+  protected static void addTerms(final List<Vector<String>> identifiers,
+      final Vector<String> terms) {
+    if (terms != null) {
+      identifiers.add(terms);
+    }
+  }
 
-    final Vector<String> splitted = Splitter.methodSplitter(methodName);
+  private List<String> getKeywords(final PropertyDescriptor<List<String>> descriptor) {
+    return Collections.unmodifiableList(new ArrayList<String>(getProperty(descriptor)));
+  }
 
-    for (final String word : returningKeywords) {
-      if (splitted.firstElement().equalsIgnoreCase(word)) {
-        return true;
+  @Override
+  public void end(RuleContext ctx) {
+    CustomParser.flushPersistentCaches();
+
+    if (LOG.isLoggable(Level.FINE)) {
+      LOG.fine(getName() + " - POS cache: " + CustomParser.getCacheHits() + " hits, "
+          + CustomParser.getCacheMisses() + " misses (" + CustomParser.getPersistentCacheHits()
+          + " found on disk, " + CustomParser.getBatches() + " batches)");
+      LOG.fine(getName() + " - antonym cache: " + antonymVerdicts);
+      LOG.fine(getName() + " - verdict caches: " + VerdictCache.describe());
+      LOG.fine(getName() + " - dictionary lookups answered by the lemma filter: "
+          + CustomDictionary.getFilteredLookups());
+      LOG.fine(getName() + " - models: tagger " + describeLoad(CustomParser.getTaggerLoadMillis(),
+          CustomParser.getTaggerLoadBytes()) + ", parser "
+          + describeLoad(CustomParser.getParserLoadMillis(), CustomParser.getParserLoadBytes())
+          + ", dictionary " + describeLoad(CustomDictionary.getLoadMillis(),
+              CustomDictionary.getLoadBytes()));
+      if (!stats.isEmpty()) {
+        LOG.fine(getName() + " - detectors: " + stats);
       }
     }
-    return false;
   }
 
-  protected static boolean shouldBeIgnoredFromAntonyms(final String source) {
+  private static String describeLoad(final long millis, final long bytes) {
+    if (millis < 0) {
+      return "not loaded";
+    }
+    return millis + " ms, " + (bytes >> 20) + " MB";
+  }
+
+  protected boolean isCollection(final String nodeType) {
 
-    for (final String target : ignoreForAntonymsKeywords) {
-      if (source.equalsIgnoreCase(target)) {
-        return true;
+    if (nodeType.contains("[")) {
+      return true;
+    }
+
+    final int index = nodeType.indexOf("<");
+    final IdentifierScanner splitted = Splitter.scanner().scan(nodeType, 0,
+        index != -1 ? index : nodeType.length(), true);
+
+    return splitted.size() > 0
+        && collectionTerms.contains(Terms.find(splitted, splitted.size() - 1));
+  }
+
+  protected boolean containsCollectionKeyword(final String item, final boolean substring) {
+
+    if (collectionTerms.contains(item.toLowerCase())) {
+      return true;
+    }
+    if (substring) {
+      final String lowerCaseItem = item.toLowerCase();
+
+      for (final String word : collectionKeywords) {
+        if (lowerCaseItem.contains(word)) {
+          return true;
+        }
       }
     }
     return false;
   }
 
-  protected static boolean isAggregation(final String source) {
+  protected boolean isReturning(final String methodName) {
+
+    final IdentifierScanner splitted = Splitter.scanner().scan(methodName, false);
+
+    return splitted.size() > 0 && returningTerms.contains(Terms.find(splitted, 0));
+  }
+
+  protected boolean shouldBeIgnoredFromAntonyms(final String source) {
+    return ignoreForAntonymsTerms.contains(source.toLowerCase());
+  }
 
-    for (final String target : aggregationKeywords) {
-      if (source.equalsIgnoreCase(target)) {
-        return true;
+  protected boolean shouldBeIgnoredFromAntonyms(final int sourceId) {
+    return ignoreForAntonymsTerms.contains(sourceId);
+  }
+
+  /*
+   * the terms that may take part in an antonym relation: not ignored, and with
+   * an antonym in the dictionary.
+   */
+  protected int[] antonymCandidates(final int[] terms) {
+
+    final int[] candidates = new int[terms.length];
+    int size = 0;
+
+    for (final int term : terms) {
+      if (!shouldBeIgnoredFromAntonyms(term) && CustomDictionary.mightHaveAntonym(term)) {
+        candidates[size++] = term;
       }
     }
-    return false;
+    return size == terms.length ? candidates : Arrays.copyOf(candidates, size);
+  }
+
+  protected boolean isAggregation(final String source) {
+    return aggregationTerms.contains(source.toLowerCase());
   }
 
   protected static boolean isCommentedCode(final String comment) {
@@ -238,9 +576,9 @@ public abstract class AbstractLAPDRule extends AbstractJavaRule {
     return literalType;
   }
 
-  protected final static Vector<Comment> getNodeComments(final Node node, List<Comment> comments) {
+  protected final static List<Comment> getNodeComments(final Node node,
+      final CommentIndex comments) {
 
-    final Vector<Comment> result = new Vector<Comment>();
     final Node body = node.getFirstParentOfType(ASTClassOrInterfaceBodyDeclaration.class);
     final int index = body.jjtGetChildIndex();
 
@@ -255,31 +593,17 @@ public abstract class AbstractLAPDRule extends AbstractJavaRule {
           .jjtGetChild(numChild - 1);
 
       if (previous != null) {
-        for (Comment comment : comments) {
-          if (previous.getEndLine() < comment.getBeginLine()
-              && node.getBeginLine() >= comment.getBeginLine()
-              && !isCommentedCode(comment.toString())) {
-
-            result.add(comment);
-          }
-        }
+        return comments.between(previous.getEndLine(), node.getBeginLine());
       }
     } else {
       /* case for the first declared variable/method in the body. */
       final Node sup = body.jjtGetParent();
 
       if (sup != null) {
-        for (final Comment comment : comments) {
-          if (sup.getBeginLine() < comment.getBeginLine()
-              && node.getBeginLine() >= comment.getBeginLine()
-              && !isCommentedCode(comment.toString())) {
-
-            result.add(comment);
-          }
-        }
+        return comments.between(sup.getBeginLine(), node.getBeginLine());
       }
     }
-    return result;
+    return new ArrayList<Comment>();
   }
 
   protected static String toString(final List<Comment> comments) {
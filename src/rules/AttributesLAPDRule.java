@@ -2,14 +2,11 @@
 package rules;
 
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 import java.util.Vector;
 
 import net.didion.jwnl.JWNLException;
 import net.didion.jwnl.data.POS;
-import net.sourceforge.pmd.RuleContext;
 import net.sourceforge.pmd.lang.java.ast.ASTClassOrInterfaceDeclaration;
 import net.sourceforge.pmd.lang.java.ast.ASTCompilationUnit;
 import net.sourceforge.pmd.lang.java.ast.ASTVariableDeclarator;
@@ -17,9 +14,11 @@ import net.sourceforge.pmd.lang.java.ast.ASTVariableDeclaratorId;
 import net.sourceforge.pmd.lang.java.ast.Comment;
 import net.sourceforge.pmd.properties.PropertyDescriptor;
 import net.sourceforge.pmd.properties.PropertyFactory;
+import utils.BoundedCache;
 import utils.CustomDictionary;
-import utils.CustomParser;
 import utils.Splitter;
+import utils.TaggedIdentifier;
+import utils.Terms;
 
 public class AttributesLAPDRule extends AbstractLAPDRule {
 
@@ -27,6 +26,7 @@ public class AttributesLAPDRule extends AbstractLAPDRule {
   private boolean booleanAttributeNameNotType;
   private boolean singleTypeCollectionNameAttribute;
   private boolean oppositeAttributeNameAndType;
+  private boolean oppositeCommentAndAttributeSignature;
 
   private static final PropertyDescriptor<Boolean> COLLECTION_TYPE_SINGLE_NAME_ATTRIBUTE = PropertyFactory
       .booleanProperty("collectionTypeSingleNameAttribute")
@@ -48,24 +48,36 @@ public class AttributesLAPDRule extends AbstractLAPDRule {
       .desc("Checks antonym relations between terms in attribute type and attribute name")
       .defaultValue(true).build();
 
+  private static final PropertyDescriptor<Boolean> OPPOSITE_COMMENT_AND_ATTRIBUTE_SIGNATURE = PropertyFactory
+      .booleanProperty("oppositeCommentAndAttributeSignature")
+      .desc("Checks antonym relations between terms in attribute comments and signature")
+      .defaultValue(true).build();
+
   public AttributesLAPDRule() {
+    addRuleChainVisit(ASTVariableDeclarator.class);
     definePropertyDescriptor(COLLECTION_TYPE_SINGLE_NAME_ATTRIBUTE);
     definePropertyDescriptor(BOOLEAN_ATTRIBUTE_NAME_NOT_TYPE);
     definePropertyDescriptor(SINGLE_TYPE_COLLECTION_NAME_ATTRIBUTE);
     definePropertyDescriptor(OPPOSITE_ATTRIBUTE_NAME_AND_TYPE);
+    definePropertyDescriptor(OPPOSITE_COMMENT_AND_ATTRIBUTE_SIGNATURE);
 
   }
 
   @Override
-  public void start(RuleContext ctx) {
+  protected boolean planDetectors() {
     collectionTypeSingleNameAttribute = getProperty(COLLECTION_TYPE_SINGLE_NAME_ATTRIBUTE);
     booleanAttributeNameNotType = getProperty(BOOLEAN_ATTRIBUTE_NAME_NOT_TYPE);
     singleTypeCollectionNameAttribute = getProperty(SINGLE_TYPE_COLLECTION_NAME_ATTRIBUTE);
     oppositeAttributeNameAndType = getProperty(OPPOSITE_ATTRIBUTE_NAME_AND_TYPE);
+    oppositeCommentAndAttributeSignature = getProperty(OPPOSITE_COMMENT_AND_ATTRIBUTE_SIGNATURE);
+
+    /* D1, D2 and E1 tag the terms that pass their gates, F1 and F2 only query WordNet */
+    return collectionTypeSingleNameAttribute || booleanAttributeNameNotType
+        || singleTypeCollectionNameAttribute;
   }
 
-  private static Vector<Comment> getVariableComments(final ASTVariableDeclarator variable,
-      List<Comment> comments) {
+  private static List<Comment> getVariableComments(final ASTVariableDeclarator variable,
+      CommentIndex comments) {
     return getNodeComments(variable, comments);
   }
 
@@ -74,69 +86,115 @@ public class AttributesLAPDRule extends AbstractLAPDRule {
     return getNodeType(variable);
   }
 
+  @Override
+  protected void collectIdentifiers(final ASTCompilationUnit node,
+      final List<Vector<String>> identifiers) {
+
+    for (final ASTVariableDeclarator variable : node
+        .findDescendantsOfType(ASTVariableDeclarator.class)) {
+      if (!isChanged(variable)) {
+        continue;
+      }
+
+      final String variableName = variable.getFirstChildOfType(ASTVariableDeclaratorId.class)
+          .getImage();
+      final String variableType = getVariableType(variable);
+
+      addTerms(identifiers, collectionTypeSingleNameAttribute
+          ? singleNameTerms(variableName, variableType)
+          : null);
+      if (booleanAttributeNameNotType) {
+        try {
+          addTerms(identifiers, verbalNameTerms(variableName, variableType));
+        } catch (final JWNLException e) {
+          e.printStackTrace();
+        }
+      }
+      if (singleTypeCollectionNameAttribute) {
+        final Vector<String> terms = pluralNameTerms(variableName, variableType);
+        if (terms != null) {
+          identifiers.add(terms);
+          identifiers.add(Splitter.variableSplitter(variableType));
+        }
+      }
+    }
+  }
+
   @Override
   public Object visit(ASTVariableDeclarator variable, Object data) {
 
+    if (!isChanged(variable)) {
+      return data;
+    }
+
     String variableName;
     String variableType;
     final String className = variable.getFirstParentOfType(ASTClassOrInterfaceDeclaration.class)
         .getImage();
-    final List<Comment> comments = variable.getFirstParentOfType(ASTCompilationUnit.class)
-        .getComments();
+    final CommentIndex comments = oppositeCommentAndAttributeSignature
+        ? CommentIndex.of(variable.getFirstParentOfType(ASTCompilationUnit.class))
+        : null;
     List<String> result = new ArrayList<String>();
 
-    init();
-
     variableType = getVariableType(variable);
     variableName = variable.getFirstChildOfType(ASTVariableDeclaratorId.class).getImage();
 
     try {
 
       // D1
-      if (detectCollectionTypeSingleNameAttribute(variableName, variableType)) {
+      if (collectionTypeSingleNameAttribute
+          && (Boolean) signatureVerdict("D1", variableName, variableType)) {
 
-        addViolationWithMessage(data, variable,
-            "LAPD - D1: Attribute type suggests multiple objects but the name suggests single objects. "
+        reportViolation(data, variable, "D1",
+            "Attribute type suggests multiple objects but the name suggests single objects. "
                 + SIGNATURE,
-            new Object[] { className, variableName, variableType });
+            new Object[] { className, variableName, variableType }, null);
       }
 
       // D2
-      if (detectBooleanAttributeNameNotType(variableName, variableType)) {
+      if (booleanAttributeNameNotType
+          && (Boolean) signatureVerdict("D2", variableName, variableType)) {
 
-        addViolationWithMessage(data, variable,
-            "LAPD - D2: Attribute name is predicate but type is not Boolean. " + SIGNATURE,
-            new Object[] { className, variableName, variableType });
+        reportViolation(data, variable, "D2",
+            "Attribute name is predicate but type is not Boolean. " + SIGNATURE,
+            new Object[] { className, variableName, variableType }, null);
       }
 
       // E1
-      if (detectSingleTypeCollectionNameAttribute(variableName, variableType)) {
+      if (singleTypeCollectionNameAttribute
+          && (Boolean) signatureVerdict("E1", variableName, variableType)) {
 
-        addViolationWithMessage(data, variable,
-            "LAPD - E1: Attribute type suggests single object but the name suggests multiple objects. "
+        reportViolation(data, variable, "E1",
+            "Attribute type suggests single object but the name suggests multiple objects. "
                 + SIGNATURE,
-            new Object[] { className, variableName, variableType });
+            new Object[] { className, variableName, variableType }, null);
       }
 
       // F1
-      result = detectOppositeAttributeNameAndAttributeType(variableName, variableType);
+      result = oppositeAttributeNameAndType
+          ? VerdictCache.toPair(signatureVerdict("F1", variableName, variableType))
+          : null;
       if (result != null) {
 
-        addViolationWithMessage(data, variable,
-            "LAPD - F1: Antonym relation between '{3}' in attribute name and '{4}' in attribute type. "
+        reportViolation(data, variable, "F1",
+            "Antonym relation between '{3}' in attribute name and '{4}' in attribute type. "
                 + SIGNATURE,
-            new Object[] { className, variableName, variableType, result.get(0), result.get(1) });
+            new Object[] { className, variableName, variableType, result.get(0), result.get(1) },
+            result);
       }
 
       // F2
-      result = detectOppositeCommentAndAttributeSignature(variable, variableName, variableType,
-          comments);
+      result = oppositeCommentAndAttributeSignature
+          ? detectOppositeCommentAndAttributeSignature(variable, variableName, variableType,
+              comments)
+          : null;
       if (result != null) {
 
-        addViolationWithMessage(data, variable,
-            "LAPD - F2: Antonym relation between variable signature and comment term: "
+        reportViolation(data, variable, "F2",
+            "Antonym relation between variable signature and comment term: "
                 + "''{3}'' in comments is an antonym of ''{4}''. " + SIGNATURE,
-            new Object[] { className, variableName, variableType, result.get(0), result.get(1) });
+            new Object[] { className, variableName, variableType, result.get(0), result.get(1) },
+            result);
       }
 
     } catch (JWNLException e) {
@@ -148,93 +206,170 @@ public class AttributesLAPDRule extends AbstractLAPDRule {
 
   }
 
+  /*
+   * the verdict of a detector reading only the name and the type of the
+   * attribute, computed once for all the attributes with the same signature.
+   */
+  private Object signatureVerdict(final String detector, final String variableName,
+      final String variableType) throws JWNLException {
+
+    final BoundedCache<String, Object> cache = VerdictCache.of(detector, verdictCacheSize);
+    final String key = VerdictCache.key(configuration, variableName, variableType);
+    Object verdict = cache.get(key);
+
+    if (verdict == null) {
+      switch (detector) {
+      case "D1":
+        verdict = detectCollectionTypeSingleNameAttribute(variableName, variableType);
+        break;
+      case "D2":
+        verdict = detectBooleanAttributeNameNotType(variableName, variableType);
+        break;
+      case "E1":
+        verdict = detectSingleTypeCollectionNameAttribute(variableName, variableType);
+        break;
+      default:
+        verdict = VerdictCache
+            .fromPair(detectOppositeAttributeNameAndAttributeType(variableName, variableType));
+      }
+      cache.put(key, verdict);
+    }
+    return verdict;
+  }
+
   // D1
   private boolean detectCollectionTypeSingleNameAttribute(final String variableName,
       final String variableType) {
 
-    if (isCollection(variableType) && !isCollection(variableName)) {
+    final Vector<String> splittedVariableName = singleNameTerms(variableName, variableType);
 
-      final Vector<String> splittedVariableName = Splitter.variableSplitter(variableName);
+    if (splittedVariableName == null) {
+      stats.record("D1", DetectorStats.Stage.LEXICAL);
+      return false;
+    }
+    stats.record("D1", DetectorStats.Stage.EVALUATED);
 
-      if (splittedVariableName.size() > 0) {
+    final TaggedIdentifier taggedVariableName = parser.tag(splittedVariableName);
+    final String lastPOS = taggedVariableName.getPOS(splittedVariableName.lastElement());
 
-        final String lastPOS = CustomParser.getPOS(splittedVariableName.lastElement(),
-            splittedVariableName);
+    return lastPOS != null && lastPOS.equalsIgnoreCase("NN") && !taggedVariableName.hasPOS("NNS");
+  }
 
-        if (lastPOS != null && lastPOS.equalsIgnoreCase("NN")
-            && !splittedVariableName.lastElement().endsWith("s")
-            && !CustomParser.hasPOS("NNS", splittedVariableName)) {
+  /*
+   * the terms of the name D1 tags: a collection type, and a name that is
+   * neither a collection nor ends with a plural; null otherwise.
+   */
+  private Vector<String> singleNameTerms(final String variableName, final String variableType) {
 
-          return true;
-        }
-      }
+    if (!isCollection(variableType) || isCollection(variableName)) {
+      return null;
     }
-    return false;
+
+    final Vector<String> splittedVariableName = Splitter.variableSplitter(variableName);
+
+    return splittedVariableName.isEmpty() || splittedVariableName.lastElement().endsWith("s")
+        ? null
+        : splittedVariableName;
   }
 
   // D2
   private boolean detectBooleanAttributeNameNotType(final String variableName,
       final String variableType) throws JWNLException {
 
-    if (!variableType.equalsIgnoreCase("boolean")) {
+    if (variableType.equalsIgnoreCase("boolean")) {
+      stats.record("D2", DetectorStats.Stage.LEXICAL);
+      return false;
+    }
 
-      final Vector<String> splittedVariableName = Splitter.variableSplitter(variableName);
+    final Vector<String> splittedVariableName = verbalNameTerms(variableName, variableType);
 
-      if (splittedVariableName.size() > 0) {
+    if (splittedVariableName == null) {
+      stats.record("D2", DetectorStats.Stage.DICTIONARY);
+      return false;
+    }
+    stats.record("D2", DetectorStats.Stage.EVALUATED);
 
-        final String firstPOS = CustomParser.getPOS(splittedVariableName.firstElement(),
-            splittedVariableName);
-        final String lastPOS = CustomParser.getPOS(splittedVariableName.lastElement(),
-            splittedVariableName);
+    final TaggedIdentifier taggedVariableName = parser.tag(splittedVariableName);
+    final String firstPOS = taggedVariableName.getPOS(splittedVariableName.firstElement());
+    final String lastPOS = taggedVariableName.getPOS(splittedVariableName.lastElement());
 
-        if ("VBG".equalsIgnoreCase(lastPOS)
-            && !CustomDictionary.hasIndexWordForPos(splittedVariableName.lastElement(), POS.NOUN)
-            || firstPOS != null && "VBZ".equalsIgnoreCase(firstPOS) && !CustomDictionary
-                .hasIndexWordForPos(splittedVariableName.firstElement(), POS.NOUN)) {
+    return "VBG".equalsIgnoreCase(lastPOS)
+        && !CustomDictionary.hasIndexWordForPos(splittedVariableName.lastElement(), POS.NOUN)
+        || firstPOS != null && "VBZ".equalsIgnoreCase(firstPOS) && !CustomDictionary
+            .hasIndexWordForPos(splittedVariableName.firstElement(), POS.NOUN);
+  }
 
-          return true;
-        }
-      }
-      return false;
+  /*
+   * the terms of the name D2 tags: a type other than boolean, and a first or
+   * last term that is not a noun of the dictionary, the only terms a verb tag
+   * can flag; null otherwise.
+   */
+  private static Vector<String> verbalNameTerms(final String variableName,
+      final String variableType) throws JWNLException {
+
+    if (variableType.equalsIgnoreCase("boolean")) {
+      return null;
+    }
+
+    final Vector<String> splittedVariableName = Splitter.variableSplitter(variableName);
+
+    if (splittedVariableName.isEmpty()
+        || CustomDictionary.hasIndexWordForPos(splittedVariableName.lastElement(), POS.NOUN)
+            && CustomDictionary.hasIndexWordForPos(splittedVariableName.firstElement(),
+                POS.NOUN)) {
+      return null;
     }
-    return false;
+    return splittedVariableName;
   }
 
   // E1
   private boolean detectSingleTypeCollectionNameAttribute(final String variableName,
       final String variableType) {
 
-    if (!isCollection(variableType) && !isCollection(variableName)) {
+    final Vector<String> splittedVariableName = pluralNameTerms(variableName, variableType);
 
-      final Vector<String> splittedVariableName = Splitter.variableSplitter(variableName);
-      final Vector<String> splittedVariableType = Splitter.variableSplitter(variableType);
+    if (splittedVariableName == null) {
+      stats.record("E1", DetectorStats.Stage.LEXICAL);
+      return false;
+    }
+    stats.record("E1", DetectorStats.Stage.EVALUATED);
 
-      if (splittedVariableName.size() > 0 && splittedVariableType.size() > 0) {
+    final Vector<String> splittedVariableType = Splitter.variableSplitter(variableType);
+    final TaggedIdentifier taggedVariableName = parser.tag(splittedVariableName);
 
-        for (final String termInType : splittedVariableType) {
-          if (containsCollectionKeyword(termInType, true)) {
-            return false;
-          }
-        }
+    return !parser.hasPOS("NNS", splittedVariableType) && taggedVariableName.hasPOS("NNS")
+        && !taggedVariableName.getPOS(splittedVariableName.firstElement()).startsWith("VB");
+  }
 
-        for (final String termInName : splittedVariableName) {
-          if (isAggregation(termInName)) {
-            return false;
-          }
-        }
+  /*
+   * the terms of the name E1 tags, along with the type: neither the type nor
+   * the name is a collection or an aggregation, and the name ends with a
+   * plural; null otherwise.
+   */
+  private Vector<String> pluralNameTerms(final String variableName, final String variableType) {
 
-        if (!CustomParser.hasPOS("NNS", splittedVariableType)
-            && CustomParser.hasPOS("NNS", splittedVariableName)
-            && splittedVariableName.lastElement().endsWith("s")
-            && !CustomParser.getPOS(splittedVariableName.firstElement(), splittedVariableName)
-                .startsWith("VB")) {
+    if (isCollection(variableType) || isCollection(variableName)) {
+      return null;
+    }
 
-          return true;
-        }
+    final Vector<String> splittedVariableName = Splitter.variableSplitter(variableName);
+    final Vector<String> splittedVariableType = Splitter.variableSplitter(variableType);
+
+    if (splittedVariableName.isEmpty() || splittedVariableType.isEmpty()
+        || !splittedVariableName.lastElement().endsWith("s")) {
+      return null;
+    }
+    for (final String termInType : splittedVariableType) {
+      if (containsCollectionKeyword(termInType, true)) {
+        return null;
+      }
+    }
+    for (final String termInName : splittedVariableName) {
+      if (isAggregation(termInName)) {
+        return null;
       }
-      return false;
     }
-    return false;
+    return splittedVariableName;
   }
 
   // F1
@@ -243,26 +378,28 @@ public class AttributesLAPDRule extends AbstractLAPDRule {
 
     List<String> result = new ArrayList<String>();
 
-    final Vector<String> splittedVariableType = Splitter.variableSplitter(variableType);
-    final Vector<String> splittedVariableName = Splitter.variableSplitter(variableName);
+    final int[] splittedVariableName = antonymCandidates(Splitter.variableTermIds(variableName));
+    final int[] splittedVariableType = splittedVariableName.length == 0 ? splittedVariableName
+        : antonymCandidates(Splitter.variableTermIds(variableType));
 
-    for (final String termInName : splittedVariableName) {
+    if (splittedVariableType.length == 0) {
+      stats.record("F1", DetectorStats.Stage.DICTIONARY);
+      return null;
+    }
+    stats.record("F1", DetectorStats.Stage.EVALUATED);
 
-      if (!shouldBeIgnoredFromAntonyms(termInName)) {
+    for (final int termInName : splittedVariableName) {
 
-        for (final String termInType : splittedVariableType) {
+      for (final int termInType : splittedVariableType) {
 
-          if (!shouldBeIgnoredFromAntonyms(termInType)
-              && CustomDictionary.haveAntonyms(CustomDictionary.stringToIndexWordSet(termInName),
-                  CustomDictionary.stringToIndexWordSet(termInType))) {
+        if (CustomDictionary.haveAntonyms(termInName, termInType, antonymVerdicts)) {
 
-            result.add(termInName);
-            result.add(termInType);
-
-            return result;
-          }
+          result.add(Terms.name(termInName));
+          result.add(Terms.name(termInType));
 
+          return result;
         }
+
       }
     }
     return null;
@@ -271,40 +408,48 @@ public class AttributesLAPDRule extends AbstractLAPDRule {
   // F2
   private List<String> detectOppositeCommentAndAttributeSignature(
       final ASTVariableDeclarator variable, final String variableName, final String variableType,
-      List<Comment> comments) throws JWNLException {
+      CommentIndex comments) throws JWNLException {
 
     final List<String> result = new ArrayList<String>();
     final String variableComments = toString(getVariableComments(variable, comments));
-    final Vector<String> splittedVariableName = Splitter.variableSplitter(variableName);
-    final Vector<String> splittedVariableType = Splitter.variableSplitter(variableType);
-    final Set<String> splittedVariableSignature = new HashSet<String>();
-
-    splittedVariableSignature.addAll(splittedVariableType);
-    splittedVariableSignature.addAll(splittedVariableName);
 
     if (!variableComments.equals("") && variableComments != null) {
 
+      final int[] splittedVariableSignature = antonymCandidates(Splitter.union(
+          Splitter.variableTermIds(variableType), Splitter.variableTermIds(variableName)));
+
+      if (splittedVariableSignature.length == 0) {
+        stats.record("F2", DetectorStats.Stage.DICTIONARY);
+        return null;
+      }
+      stats.record("F2", DetectorStats.Stage.EVALUATED);
+
       final Vector<String> splittedVariableComments = Splitter.commentSplitter(variableComments);
 
       for (final String commentWord : splittedVariableComments) {
 
-        if (!shouldBeIgnoredFromAntonyms(commentWord)) {
+        /* checked as a string first: only comment words with antonyms are interned */
+        if (!shouldBeIgnoredFromAntonyms(commentWord)
+            && CustomDictionary.mightHaveAntonym(commentWord)) {
+
+          final int commentTerm = Terms.id(commentWord);
 
-          for (final String signatureWord : splittedVariableSignature) {
+          for (final int signatureTerm : splittedVariableSignature) {
 
-            if (CustomDictionary.haveAntonyms(CustomDictionary.stringToIndexWordSet(commentWord),
-                CustomDictionary.stringToIndexWordSet(signatureWord))
-                && !commentWord.equalsIgnoreCase(signatureWord)
-                && !shouldBeIgnoredFromAntonyms(signatureWord)) {
+            if (commentTerm != signatureTerm
+                && CustomDictionary.haveAntonyms(commentTerm, signatureTerm,
+                    antonymVerdicts)) {
 
               result.add(commentWord);
-              result.add(signatureWord);
+              result.add(Terms.name(signatureTerm));
               return result;
 
             }
           }
         }
       }
+    } else {
+      stats.record("F2", DetectorStats.Stage.LEXICAL);
     }
     return null;
   }
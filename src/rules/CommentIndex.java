@@ -0,0 +1,99 @@
+package rules;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import net.sourceforge.pmd.lang.java.ast.ASTCompilationUnit;
+import net.sourceforge.pmd.lang.java.ast.Comment;
+
+/*
+ * comments of a compilation unit sorted by begin line, with the commented
+ * code among them recognized once, so that the comments preceding a member
+ * are found by a binary search instead of a scan of the whole file.
+ */
+final class CommentIndex {
+
+  /*
+   * the index of the last compilation unit of the thread: the rules visit the
+   * same file one after the other and share it.
+   */
+  private static final ThreadLocal<CommentIndex> LAST = new ThreadLocal<CommentIndex>();
+
+  private final ASTCompilationUnit unit;
+  private final Comment[] comments;
+  private final int[] beginLines;
+  private final boolean[] commentedCode;
+
+  private CommentIndex(final ASTCompilationUnit unit) {
+
+    final List<Comment> sorted = new ArrayList<Comment>(unit.getComments());
+
+    /* stable: comments starting on the same line keep their order */
+    Collections.sort(sorted, new Comparator<Comment>() {
+      @Override
+      public int compare(final Comment a, final Comment b) {
+        return Integer.compare(a.getBeginLine(), b.getBeginLine());
+      }
+    });
+
+    this.unit = unit;
+    this.comments = sorted.toArray(new Comment[sorted.size()]);
+    this.beginLines = new int[this.comments.length];
+    this.commentedCode = new boolean[this.comments.length];
+
+    for (int i = 0; i < this.comments.length; i++) {
+      this.beginLines[i] = this.comments[i].getBeginLine();
+      this.commentedCode[i] = AbstractLAPDRule.isCommentedCode(this.comments[i].toString());
+    }
+  }
+
+  static CommentIndex of(final ASTCompilationUnit unit) {
+
+    CommentIndex index = LAST.get();
+
+    if (index == null || index.unit != unit) {
+      index = new CommentIndex(unit);
+      LAST.set(index);
+    }
+    return index;
+  }
+
+  /*
+   * the comments, other than commented code, beginning after the line after
+   * and up to the line upTo.
+   */
+  List<Comment> between(final int after, final int upTo) {
+
+    final List<Comment> result = new ArrayList<Comment>();
+
+    for (int i = this.firstAfter(after); i < this.comments.length
+        && this.beginLines[i] <= upTo; i++) {
+      if (!this.commentedCode[i]) {
+        result.add(this.comments[i]);
+      }
+    }
+    return result;
+  }
+
+  /*
+   * position of the first comment beginning after the line.
+   */
+  private int firstAfter(final int line) {
+
+    int low = 0;
+    int high = this.beginLines.length;
+
+    while (low < high) {
+      final int middle = (low + high) >>> 1;
+      if (this.beginLines[middle] <= line) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+}
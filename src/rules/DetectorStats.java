@@ -0,0 +1,53 @@
+package rules;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+ * how far the candidates of each detector went: dropped by a string or type
+ * check, dropped by a dictionary gate, or evaluated with the tagger or the
+ * WordNet relations. Each rule instance has its own, so no synchronization.
+ */
+final class DetectorStats {
+
+  enum Stage {
+    LEXICAL, DICTIONARY, EVALUATED
+  }
+
+  private final Map<String, long[]> counts = new TreeMap<String, long[]>();
+
+  void record(final String detector, final Stage stage) {
+
+    long[] detectorCounts = this.counts.get(detector);
+
+    if (detectorCounts == null) {
+      detectorCounts = new long[Stage.values().length];
+      this.counts.put(detector, detectorCounts);
+    }
+    detectorCounts[stage.ordinal()]++;
+  }
+
+  boolean isEmpty() {
+    return this.counts.isEmpty();
+  }
+
+  @Override
+  public String toString() {
+
+    final StringBuilder result = new StringBuilder();
+
+    for (final Map.Entry<String, long[]> entry : this.counts.entrySet()) {
+      final long[] detectorCounts = entry.getValue();
+
+      if (result.length() > 0) {
+        result.append(", ");
+      }
+      result.append(entry.getKey()).append(": ")
+          .append(detectorCounts[Stage.LEXICAL.ordinal()]).append(" lexical drops, ")
+          .append(detectorCounts[Stage.DICTIONARY.ordinal()]).append(" dictionary drops, ")
+          .append(detectorCounts[Stage.EVALUATED.ordinal()]).append(" evaluated");
+    }
+    return result.toString();
+  }
+
+}
@@ -0,0 +1,317 @@
+package rules;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * the lines changed by a unified diff, per file of the new revision, so that
+ * the rules only analyze the members touching them. A line removed counts as
+ * a change of the line at its place in the new revision.
+ *
+ * The diff comes from a file (paths relative to a base directory, a/ and b/
+ * prefixes of git diffs dropped) or from git diff between revisions of a
+ * local repository. The command line runner installs it for all the rules;
+ * the diffFile rule property names a diff file for the other PMD front ends.
+ */
+public final class DiffScope {
+
+  private static final Pattern HUNK = Pattern
+      .compile("^@@ -\\d+(?:,(\\d+))? \\+(\\d+)(?:,(\\d+))? @@");
+
+  private static final Map<String, DiffScope> LOADED = new HashMap<String, DiffScope>();
+  private static volatile DiffScope installed;
+
+  /* changed lines of the new revision, sorted, by normalized absolute path */
+  private final Map<String, int[]> changes;
+
+  private DiffScope(final Map<String, int[]> changes) {
+    this.changes = changes;
+  }
+
+  /*
+   * the scope of all the rules, or null to analyze every member.
+   */
+  public static DiffScope getInstalled() {
+    return DiffScope.installed;
+  }
+
+  public static void install(final DiffScope scope) {
+    DiffScope.installed = scope;
+  }
+
+  /*
+   * the scope of a diff file whose paths are relative to the working
+   * directory, read again when the file changes.
+   */
+  static synchronized DiffScope load(final String diffFile) throws IOException {
+
+    final File file = new File(diffFile).getAbsoluteFile();
+    final String key = file.getPath() + '\u0000' + file.lastModified();
+    DiffScope scope = DiffScope.LOADED.get(key);
+
+    if (scope == null) {
+      try (Reader in = new InputStreamReader(new FileInputStream(file),
+          StandardCharsets.UTF_8)) {
+        scope = DiffScope.parse(in, new File("."));
+      }
+      DiffScope.LOADED.clear();
+      DiffScope.LOADED.put(key, scope);
+    }
+    return scope;
+  }
+
+  /*
+   * the changes of git diff in the repository: revisions is a revision to
+   * compare the working tree to, or a range such as main..HEAD.
+   */
+  public static DiffScope fromGit(final File repository, final String revisions)
+      throws IOException {
+
+    final String root = DiffScope.git(repository, "rev-parse", "--show-toplevel").trim();
+    final List<String> command = new ArrayList<String>(Arrays.asList("-c",
+        "core.quotePath=false", "diff", "--no-color", "--no-ext-diff", "--src-prefix=a/",
+        "--dst-prefix=b/", "--unified=0"));
+
+    command.addAll(Arrays.asList(revisions.trim().split("\\s+")));
+    return DiffScope.parse(new StringReader(DiffScope.git(repository,
+        command.toArray(new String[command.size()]))), new File(root));
+  }
+
+  private static String git(final File repository, final String... args) throws IOException {
+
+    final List<String> command = new ArrayList<String>(Arrays.asList("git", "-C",
+        repository.getPath()));
+    final StringBuilder output = new StringBuilder();
+
+    command.addAll(Arrays.asList(args));
+
+    final Process process = new ProcessBuilder(command)
+        .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+
+    try (BufferedReader in = new BufferedReader(
+        new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+      final char[] buffer = new char[8192];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        output.append(buffer, 0, read);
+      }
+    }
+    try {
+      if (process.waitFor() != 0) {
+        throw new IOException("git " + String.join(" ", args) + " failed in " + repository);
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("interrupted while running git", e);
+    }
+    return output.toString();
+  }
+
+  /*
+   * reads a unified diff; the paths are resolved against base.
+   */
+  public static DiffScope parse(final Reader diff, final File base) throws IOException {
+
+    final Map<String, List<Integer>> lines = new TreeMap<String, List<Integer>>();
+    final BufferedReader in = new BufferedReader(diff);
+    boolean gitStyle = false;
+    List<Integer> current = null;
+    int newLine = 0;
+    int oldRemaining = 0;
+    int newRemaining = 0;
+    String line;
+
+    while ((line = in.readLine()) != null) {
+      if (oldRemaining > 0 || newRemaining > 0) {
+        /* inside a hunk */
+        if (line.startsWith("+")) {
+          current.add(newLine++);
+          newRemaining--;
+        } else if (line.startsWith("-")) {
+          current.add(newLine);
+          oldRemaining--;
+        } else if (!line.startsWith("\\")) {
+          newLine++;
+          oldRemaining--;
+          newRemaining--;
+        }
+        continue;
+      }
+
+      if (line.startsWith("diff --git ")) {
+        gitStyle = true;
+      } else if (line.startsWith("+++ ")) {
+        final String path = DiffScope.pathOf(line.substring(4), gitStyle);
+
+        if (path == null) {
+          current = null;
+        } else {
+          final String key = DiffScope.normalize(base.toPath().resolve(path));
+          current = lines.get(key);
+          if (current == null) {
+            current = new ArrayList<Integer>();
+            lines.put(key, current);
+          }
+        }
+      } else if (line.startsWith("@@ ")) {
+        final Matcher hunk = HUNK.matcher(line);
+
+        if (current != null && hunk.find()) {
+          oldRemaining = hunk.group(1) == null ? 1 : Integer.parseInt(hunk.group(1));
+          newLine = Integer.parseInt(hunk.group(2));
+          newRemaining = hunk.group(3) == null ? 1 : Integer.parseInt(hunk.group(3));
+        }
+      }
+    }
+
+    final Map<String, int[]> changes = new HashMap<String, int[]>();
+
+    for (final Map.Entry<String, List<Integer>> entry : lines.entrySet()) {
+      final List<Integer> changed = entry.getValue();
+      final int[] sorted = new int[changed.size()];
+
+      for (int i = 0; i < sorted.length; i++) {
+        sorted[i] = changed.get(i);
+      }
+      Arrays.sort(sorted);
+      changes.put(entry.getKey(), sorted);
+    }
+    return new DiffScope(changes);
+  }
+
+  /*
+   * the path of a +++ line, null for a deleted file.
+   */
+  private static String pathOf(final String header, final boolean gitStyle) {
+
+    String path = header;
+    final int tab = path.indexOf('\t');
+
+    if (tab != -1) {
+      path = path.substring(0, tab);
+    }
+    if ("/dev/null".equals(path)) {
+      return null;
+    }
+    if (path.length() > 1 && path.startsWith("\"") && path.endsWith("\"")) {
+      path = DiffScope.unquote(path.substring(1, path.length() - 1));
+    }
+    if (gitStyle && path.startsWith("b/")) {
+      path = path.substring(2);
+    }
+    return path;
+  }
+
+  /*
+   * a path git quoted: C escapes, and octal escapes for the bytes of the
+   * UTF-8 characters unless core.quotePath is false.
+   */
+  static String unquote(final String quoted) {
+
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    int start = 0;
+    int i = 0;
+
+    while (i < quoted.length()) {
+      if (quoted.charAt(i) != '\\' || i + 1 == quoted.length()) {
+        i++;
+        continue;
+      }
+      DiffScope.append(bytes, quoted.substring(start, i));
+
+      int digits = 0;
+      while (digits < 3 && i + 1 + digits < quoted.length()
+          && quoted.charAt(i + 1 + digits) >= '0' && quoted.charAt(i + 1 + digits) <= '7') {
+        digits++;
+      }
+      if (digits > 0) {
+        bytes.write(Integer.parseInt(quoted.substring(i + 1, i + 1 + digits), 8));
+        i += 1 + digits;
+      } else {
+        final int escape = "abtnvfr\"\\".indexOf(quoted.charAt(i + 1));
+
+        if (escape == -1) {
+          DiffScope.append(bytes, quoted.substring(i, i + 2));
+        } else {
+          bytes.write("\007\b\t\n\013\f\r\"\\".charAt(escape));
+        }
+        i += 2;
+      }
+      start = i;
+    }
+    DiffScope.append(bytes, quoted.substring(start));
+    return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  private static void append(final ByteArrayOutputStream bytes, final String text) {
+
+    final byte[] encoded = text.getBytes(StandardCharsets.UTF_8);
+
+    bytes.write(encoded, 0, encoded.length);
+  }
+
+  private static String normalize(final Path path) {
+    return path.toAbsolutePath().normalize().toString();
+  }
+
+  /*
+   * the files of the new revision with changed lines.
+   */
+  public List<File> getFiles() {
+
+    final List<File> files = new ArrayList<File>();
+
+    for (final String path : this.changes.keySet()) {
+      files.add(new File(path));
+    }
+    Collections.sort(files);
+    return files;
+  }
+
+  public boolean contains(final File file) {
+    return this.changes.containsKey(DiffScope.normalize(file.toPath()));
+  }
+
+  /*
+   * the changed lines of the file, empty if the diff does not touch it.
+   */
+  int[] linesOf(final String file) {
+
+    final int[] lines = file == null ? null
+        : this.changes.get(DiffScope.normalize(new File(file).toPath()));
+
+    return lines == null ? new int[0] : lines;
+  }
+
+  /*
+   * true if a line of [begin, end] is in the sorted changed lines.
+   */
+  static boolean intersects(final int[] lines, final int begin, final int end) {
+
+    int index = Arrays.binarySearch(lines, begin);
+
+    if (index >= 0) {
+      return true;
+    }
+    index = -index - 1;
+    return index < lines.length && lines[index] <= end;
+  }
+
+}
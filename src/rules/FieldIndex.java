@@ -0,0 +1,100 @@
+package rules;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import net.sourceforge.pmd.lang.java.ast.ASTClassOrInterfaceBody;
+import net.sourceforge.pmd.lang.java.ast.ASTClassOrInterfaceBodyDeclaration;
+import net.sourceforge.pmd.lang.java.ast.ASTClassOrInterfaceDeclaration;
+import net.sourceforge.pmd.lang.java.ast.ASTCompilationUnit;
+import net.sourceforge.pmd.lang.java.ast.ASTFieldDeclaration;
+import net.sourceforge.pmd.lang.java.ast.ASTVariableDeclarator;
+import net.sourceforge.pmd.lang.java.ast.ASTVariableDeclaratorId;
+
+/*
+ * fields declared by a class, by lower cased name, with their declared type.
+ * Built the first time an accessor of the class is checked and kept for the
+ * rest of the compilation unit.
+ */
+final class FieldIndex {
+
+  private static final ThreadLocal<FieldIndex.Cache> CACHE = new ThreadLocal<FieldIndex.Cache>();
+
+  private final Map<String, String> types = new HashMap<String, String>();
+
+  private FieldIndex(final ASTClassOrInterfaceDeclaration declaration) {
+
+    final ASTClassOrInterfaceBody body = declaration
+        .getFirstChildOfType(ASTClassOrInterfaceBody.class);
+
+    if (body == null) {
+      return;
+    }
+    for (final ASTClassOrInterfaceBodyDeclaration member : body
+        .findChildrenOfType(ASTClassOrInterfaceBodyDeclaration.class)) {
+
+      final ASTFieldDeclaration field = member.getFirstChildOfType(ASTFieldDeclaration.class);
+
+      if (field != null) {
+        for (final ASTVariableDeclarator variable : field
+            .findChildrenOfType(ASTVariableDeclarator.class)) {
+
+          final String name = variable.getFirstChildOfType(ASTVariableDeclaratorId.class)
+              .getImage().toLowerCase();
+
+          if (!this.types.containsKey(name)) {
+            this.types.put(name, AbstractLAPDRule.getNodeType(variable));
+          }
+        }
+      }
+    }
+  }
+
+  /*
+   * the index of the class declaring the node.
+   */
+  static FieldIndex of(final ASTClassOrInterfaceDeclaration declaration) {
+
+    final ASTCompilationUnit unit = declaration.getFirstParentOfType(ASTCompilationUnit.class);
+    FieldIndex.Cache cache = CACHE.get();
+
+    if (cache == null || cache.unit != unit) {
+      cache = new FieldIndex.Cache(unit);
+      CACHE.set(cache);
+    }
+
+    FieldIndex index = cache.indexes.get(declaration);
+    if (index == null) {
+      index = new FieldIndex(declaration);
+      cache.indexes.put(declaration, index);
+    }
+    return index;
+  }
+
+  boolean hasField(final String name) {
+    return this.types.containsKey(name.toLowerCase());
+  }
+
+  /*
+   * the declared type of the field, null if the class has no such field.
+   */
+  String getType(final String name) {
+    return this.types.get(name.toLowerCase());
+  }
+
+  /*
+   * the indexes built for the classes of the current compilation unit.
+   */
+  private static final class Cache {
+
+    private final ASTCompilationUnit unit;
+    private final Map<ASTClassOrInterfaceDeclaration, FieldIndex> indexes;
+
+    private Cache(final ASTCompilationUnit unit) {
+      this.unit = unit;
+      this.indexes = new IdentityHashMap<ASTClassOrInterfaceDeclaration, FieldIndex>();
+    }
+  }
+
+}
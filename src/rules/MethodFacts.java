@@ -0,0 +1,152 @@
+package rules;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.java.ast.ASTAndExpression;
+import net.sourceforge.pmd.lang.java.ast.ASTBlockStatement;
+import net.sourceforge.pmd.lang.java.ast.ASTConditionalAndExpression;
+import net.sourceforge.pmd.lang.java.ast.ASTConditionalExpression;
+import net.sourceforge.pmd.lang.java.ast.ASTConditionalOrExpression;
+import net.sourceforge.pmd.lang.java.ast.ASTEqualityExpression;
+import net.sourceforge.pmd.lang.java.ast.ASTExpression;
+import net.sourceforge.pmd.lang.java.ast.ASTIfStatement;
+import net.sourceforge.pmd.lang.java.ast.ASTInclusiveOrExpression;
+import net.sourceforge.pmd.lang.java.ast.ASTInstanceOfExpression;
+import net.sourceforge.pmd.lang.java.ast.ASTMethodDeclaration;
+import net.sourceforge.pmd.lang.java.ast.ASTName;
+import net.sourceforge.pmd.lang.java.ast.ASTPrimaryExpression;
+import net.sourceforge.pmd.lang.java.ast.ASTPrimaryPrefix;
+import net.sourceforge.pmd.lang.java.ast.ASTPrimarySuffix;
+import net.sourceforge.pmd.lang.java.ast.ASTRelationalExpression;
+import net.sourceforge.pmd.lang.java.ast.ASTReturnStatement;
+import net.sourceforge.pmd.lang.java.ast.ASTShiftExpression;
+import net.sourceforge.pmd.lang.java.ast.ASTSwitchStatement;
+import net.sourceforge.pmd.lang.java.ast.ASTThrowStatement;
+
+/*
+ * what the method detectors need to know about the body of a method, collected
+ * in one traversal. Like the find methods of PMD nodes, the traversal does not
+ * enter nodes that are find boundaries.
+ */
+final class MethodFacts {
+
+  private final List<ASTPrimaryExpression> primaryExpressions;
+  private final List<ASTThrowStatement> throwStatements;
+  private final List<String> returnedNames;
+  private boolean hasBlockStatement = false;
+  private boolean hasIfOrSwitch = false;
+  private boolean hasConditionOperator = false;
+  private List<String> calledMethodsNames;
+
+  MethodFacts(final ASTMethodDeclaration method) {
+
+    this.primaryExpressions = new ArrayList<ASTPrimaryExpression>();
+    this.throwStatements = new ArrayList<ASTThrowStatement>();
+    this.returnedNames = new ArrayList<String>();
+    this.collect(method);
+  }
+
+  private void collect(final Node node) {
+
+    for (int i = 0; i < node.jjtGetNumChildren(); i++) {
+      final Node child = node.jjtGetChild(i);
+
+      if (child instanceof ASTPrimaryExpression) {
+        this.primaryExpressions.add((ASTPrimaryExpression) child);
+      } else if (child instanceof ASTBlockStatement) {
+        this.hasBlockStatement = true;
+      } else if (child instanceof ASTIfStatement || child instanceof ASTSwitchStatement) {
+        this.hasIfOrSwitch = true;
+      } else if (child instanceof ASTThrowStatement) {
+        this.throwStatements.add((ASTThrowStatement) child);
+      } else if (child instanceof ASTReturnStatement) {
+        this.returnedNames.add(MethodFacts.returnedName((ASTReturnStatement) child));
+      } else if (MethodFacts.isConditionOperator(child)) {
+        this.hasConditionOperator = true;
+      }
+
+      if (!child.isFindBoundary()) {
+        this.collect(child);
+      }
+    }
+  }
+
+  /*
+   * the variable a return statement returns, for return x; or return this.x;
+   * null for any other expression.
+   */
+  private static String returnedName(final ASTReturnStatement statement) {
+
+    final ASTExpression expression = statement.getFirstChildOfType(ASTExpression.class);
+
+    if (expression == null || expression.jjtGetNumChildren() != 1
+        || !(expression.jjtGetChild(0) instanceof ASTPrimaryExpression)) {
+      return null;
+    }
+
+    final Node primary = expression.jjtGetChild(0);
+    final Node prefix = primary.jjtGetChild(0);
+
+    if (!(prefix instanceof ASTPrimaryPrefix)) {
+      return null;
+    }
+    if (primary.jjtGetNumChildren() == 1 && prefix.jjtGetNumChildren() == 1
+        && prefix.jjtGetChild(0) instanceof ASTName) {
+      final String name = prefix.jjtGetChild(0).getImage();
+
+      return name.indexOf('.') == -1 ? name : null;
+    }
+    if (primary.jjtGetNumChildren() == 2 && ((ASTPrimaryPrefix) prefix).usesThisModifier()
+        && primary.jjtGetChild(1) instanceof ASTPrimarySuffix
+        && !((ASTPrimarySuffix) primary.jjtGetChild(1)).isArguments()) {
+      return primary.jjtGetChild(1).getImage();
+    }
+    return null;
+  }
+
+  private static boolean isConditionOperator(final Node node) {
+    return node instanceof ASTEqualityExpression || node instanceof ASTRelationalExpression
+        || node instanceof ASTShiftExpression || node instanceof ASTConditionalOrExpression
+        || node instanceof ASTInclusiveOrExpression || node instanceof ASTConditionalAndExpression
+        || node instanceof ASTAndExpression || node instanceof ASTConditionalExpression
+        || node instanceof ASTInstanceOfExpression;
+  }
+
+  boolean hasBlockStatement() {
+    return this.hasBlockStatement;
+  }
+
+  boolean hasIfOrSwitch() {
+    return this.hasIfOrSwitch;
+  }
+
+  /*
+   * true if the body compares, tests or combines values.
+   */
+  boolean hasConditionOperator() {
+    return this.hasConditionOperator;
+  }
+
+  List<ASTThrowStatement> getThrowStatements() {
+    return this.throwStatements;
+  }
+
+  /*
+   * the variable returned by every return statement, in source order, null
+   * for the statements returning another expression.
+   */
+  List<String> getReturnedNames() {
+    return this.returnedNames;
+  }
+
+  List<String> getCalledMethodsNames() {
+
+    if (this.calledMethodsNames == null) {
+      this.calledMethodsNames = MethodsLAPDRule.getCalledMethodsNames(this.primaryExpressions);
+    }
+    return this.calledMethodsNames;
+  }
+
+}
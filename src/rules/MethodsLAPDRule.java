@@ -2,45 +2,147 @@
 package rules;
 
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 import java.util.Vector;
+import java.util.regex.Pattern;
 
 import net.didion.jwnl.JWNLException;
-import net.sourceforge.pmd.lang.apex.ast.ASTAssignmentExpression;
 import net.sourceforge.pmd.lang.ast.Node;
-import net.sourceforge.pmd.lang.java.ast.ASTAndExpression;
-import net.sourceforge.pmd.lang.java.ast.ASTBlockStatement;
 import net.sourceforge.pmd.lang.java.ast.ASTClassOrInterfaceDeclaration;
 import net.sourceforge.pmd.lang.java.ast.ASTCompilationUnit;
-import net.sourceforge.pmd.lang.java.ast.ASTConditionalAndExpression;
-import net.sourceforge.pmd.lang.java.ast.ASTConditionalExpression;
-import net.sourceforge.pmd.lang.java.ast.ASTConditionalOrExpression;
-import net.sourceforge.pmd.lang.java.ast.ASTEqualityExpression;
-import net.sourceforge.pmd.lang.java.ast.ASTFieldDeclaration;
-import net.sourceforge.pmd.lang.java.ast.ASTIfStatement;
-import net.sourceforge.pmd.lang.java.ast.ASTInclusiveOrExpression;
-import net.sourceforge.pmd.lang.java.ast.ASTInstanceOfExpression;
 import net.sourceforge.pmd.lang.java.ast.ASTMethodDeclaration;
 import net.sourceforge.pmd.lang.java.ast.ASTName;
 import net.sourceforge.pmd.lang.java.ast.ASTPrimaryExpression;
 import net.sourceforge.pmd.lang.java.ast.ASTPrimaryPrefix;
 import net.sourceforge.pmd.lang.java.ast.ASTPrimarySuffix;
-import net.sourceforge.pmd.lang.java.ast.ASTRelationalExpression;
-import net.sourceforge.pmd.lang.java.ast.ASTReturnStatement;
-import net.sourceforge.pmd.lang.java.ast.ASTShiftExpression;
-import net.sourceforge.pmd.lang.java.ast.ASTSwitchStatement;
 import net.sourceforge.pmd.lang.java.ast.ASTThrowStatement;
-import net.sourceforge.pmd.lang.java.ast.ASTVariableDeclarator;
-import net.sourceforge.pmd.lang.java.ast.ASTVariableDeclaratorId;
 import net.sourceforge.pmd.lang.java.ast.Comment;
+import net.sourceforge.pmd.properties.PropertyDescriptor;
+import net.sourceforge.pmd.properties.PropertyFactory;
+import utils.BoundedCache;
 import utils.CustomDictionary;
-import utils.CustomParser;
 import utils.Splitter;
+import utils.TaggedIdentifier;
+import utils.Terms;
 
 public class MethodsLAPDRule extends AbstractLAPDRule {
 
+  /* names like int2string */
+  private static final Pattern CONVERSION_NAME = Pattern.compile("[a-z]+2[a-z]+");
+
+  private boolean isMethodNotBoolean;
+  private boolean setMethodReturns;
+  private boolean collectionTypeSingleNameMethod;
+  private boolean notImplementedCondition;
+  private boolean validationMethodDoesNotConfirm;
+  private boolean getMethodDoesNotReturn;
+  private boolean falseBooleanMethod;
+  private boolean transformMethodDoesNotReturn;
+  private boolean singleTypeCollectionNameMethod;
+  private boolean getMethodDoesNotReturnAttribute;
+  private boolean oppositeMethodNameAndMethodType;
+  private boolean oppositeCommentAndMethodSignature;
+
+  private static final PropertyDescriptor<Boolean> IS_METHOD_NOT_BOOLEAN = PropertyFactory
+      .booleanProperty("isMethodNotBoolean")
+      .desc("Checks isX() methods that do not return a boolean").defaultValue(true).build();
+
+  private static final PropertyDescriptor<Boolean> SET_METHOD_RETURNS = PropertyFactory
+      .booleanProperty("setMethodReturns")
+      .desc("Checks setX() methods that return").defaultValue(true).build();
+
+  private static final PropertyDescriptor<Boolean> COLLECTION_TYPE_SINGLE_NAME_METHOD = PropertyFactory
+      .booleanProperty("collectionTypeSingleNameMethod")
+      .desc("Checks methods with collection type and single object name")
+      .defaultValue(true).build();
+
+  private static final PropertyDescriptor<Boolean> NOT_IMPLEMENTED_CONDITION = PropertyFactory
+      .booleanProperty("notImplementedCondition")
+      .desc("Checks methods whose comments document a condition the body does not implement")
+      .defaultValue(true).build();
+
+  private static final PropertyDescriptor<Boolean> VALIDATION_METHOD_DOES_NOT_CONFIRM = PropertyFactory
+      .booleanProperty("validationMethodDoesNotConfirm")
+      .desc("Checks validation methods that neither return nor throw").defaultValue(true).build();
+
+  private static final PropertyDescriptor<Boolean> GET_METHOD_DOES_NOT_RETURN = PropertyFactory
+      .booleanProperty("getMethodDoesNotReturn")
+      .desc("Checks getX() methods that do not return").defaultValue(true).build();
+
+  private static final PropertyDescriptor<Boolean> FALSE_BOOLEAN_METHOD = PropertyFactory
+      .booleanProperty("falseBooleanMethod")
+      .desc("Checks methods whose name is a predicate but that return nothing")
+      .defaultValue(true).build();
+
+  private static final PropertyDescriptor<Boolean> TRANSFORM_METHOD_DOES_NOT_RETURN = PropertyFactory
+      .booleanProperty("transformMethodDoesNotReturn")
+      .desc("Checks transforming methods that do not return the transformed object")
+      .defaultValue(true).build();
+
+  private static final PropertyDescriptor<Boolean> SINGLE_TYPE_COLLECTION_NAME_METHOD = PropertyFactory
+      .booleanProperty("singleTypeCollectionNameMethod")
+      .desc("Checks methods with single instance type and collection object name")
+      .defaultValue(true).build();
+
+  private static final PropertyDescriptor<Boolean> GET_METHOD_DOES_NOT_RETURN_ATTRIBUTE = PropertyFactory
+      .booleanProperty("getMethodDoesNotReturnAttribute")
+      .desc("Checks getX() methods that do not return the corresponding attribute")
+      .defaultValue(true).build();
+
+  private static final PropertyDescriptor<Boolean> OPPOSITE_METHOD_NAME_AND_METHOD_TYPE = PropertyFactory
+      .booleanProperty("oppositeMethodNameAndMethodType")
+      .desc("Checks antonym relations between terms in method name and method type")
+      .defaultValue(true).build();
+
+  private static final PropertyDescriptor<Boolean> OPPOSITE_COMMENT_AND_METHOD_SIGNATURE = PropertyFactory
+      .booleanProperty("oppositeCommentAndMethodSignature")
+      .desc("Checks antonym relations between terms in method comments and signature")
+      .defaultValue(true).build();
+
+  /* detectors reading the body of the method and its comments */
+  private boolean needsFacts;
+  private boolean needsComments;
+
+  public MethodsLAPDRule() {
+    addRuleChainVisit(ASTMethodDeclaration.class);
+    definePropertyDescriptor(IS_METHOD_NOT_BOOLEAN);
+    definePropertyDescriptor(SET_METHOD_RETURNS);
+    definePropertyDescriptor(COLLECTION_TYPE_SINGLE_NAME_METHOD);
+    definePropertyDescriptor(NOT_IMPLEMENTED_CONDITION);
+    definePropertyDescriptor(VALIDATION_METHOD_DOES_NOT_CONFIRM);
+    definePropertyDescriptor(GET_METHOD_DOES_NOT_RETURN);
+    definePropertyDescriptor(FALSE_BOOLEAN_METHOD);
+    definePropertyDescriptor(TRANSFORM_METHOD_DOES_NOT_RETURN);
+    definePropertyDescriptor(SINGLE_TYPE_COLLECTION_NAME_METHOD);
+    definePropertyDescriptor(GET_METHOD_DOES_NOT_RETURN_ATTRIBUTE);
+    definePropertyDescriptor(OPPOSITE_METHOD_NAME_AND_METHOD_TYPE);
+    definePropertyDescriptor(OPPOSITE_COMMENT_AND_METHOD_SIGNATURE);
+  }
+
+  @Override
+  protected boolean planDetectors() {
+    isMethodNotBoolean = getProperty(IS_METHOD_NOT_BOOLEAN);
+    setMethodReturns = getProperty(SET_METHOD_RETURNS);
+    collectionTypeSingleNameMethod = getProperty(COLLECTION_TYPE_SINGLE_NAME_METHOD);
+    notImplementedCondition = getProperty(NOT_IMPLEMENTED_CONDITION);
+    validationMethodDoesNotConfirm = getProperty(VALIDATION_METHOD_DOES_NOT_CONFIRM);
+    getMethodDoesNotReturn = getProperty(GET_METHOD_DOES_NOT_RETURN);
+    falseBooleanMethod = getProperty(FALSE_BOOLEAN_METHOD);
+    transformMethodDoesNotReturn = getProperty(TRANSFORM_METHOD_DOES_NOT_RETURN);
+    singleTypeCollectionNameMethod = getProperty(SINGLE_TYPE_COLLECTION_NAME_METHOD);
+    getMethodDoesNotReturnAttribute = getProperty(GET_METHOD_DOES_NOT_RETURN_ATTRIBUTE);
+    oppositeMethodNameAndMethodType = getProperty(OPPOSITE_METHOD_NAME_AND_METHOD_TYPE);
+    oppositeCommentAndMethodSignature = getProperty(OPPOSITE_COMMENT_AND_METHOD_SIGNATURE);
+
+    needsFacts = setMethodReturns || notImplementedCondition || validationMethodDoesNotConfirm
+        || getMethodDoesNotReturnAttribute;
+    needsComments = notImplementedCondition || oppositeCommentAndMethodSignature;
+
+    /* A4, B5 and B6 tag the terms that pass their gates, C1 and C2 only query WordNet */
+    return collectionTypeSingleNameMethod || transformMethodDoesNotReturn
+        || singleTypeCollectionNameMethod;
+  }
+
   private static String getMethodType(final ASTMethodDeclaration method) {
 
     return getNodeType(method);
@@ -60,17 +162,20 @@ public class MethodsLAPDRule extends AbstractLAPDRule {
     return name;
   }
 
-  private static Vector<Comment> getMethodComments(final ASTMethodDeclaration method,
-      final List<Comment> comments) {
+  private static List<Comment> getMethodComments(final ASTMethodDeclaration method,
+      final CommentIndex comments) {
 
     return getNodeComments(method, comments);
   }
 
-  private static List<String> getCalledMethodsNames(final ASTMethodDeclaration method) {
+  /*
+   * the names of the methods called by the primary expressions of a method,
+   * see MethodFacts.
+   */
+  static List<String> getCalledMethodsNames(
+      final List<ASTPrimaryExpression> primaryExpressions) {
 
     final List<String> calledMethodsNames = new ArrayList<String>();
-    final List<ASTPrimaryExpression> primaryExpressions = method
-        .findDescendantsOfType(ASTPrimaryExpression.class);
     int thisIndex = -1;
     boolean superFirst = false;
 
@@ -219,19 +324,45 @@ public class MethodsLAPDRule extends AbstractLAPDRule {
     return calledMethodsNames;
   }
 
+  @Override
+  protected void collectIdentifiers(final ASTCompilationUnit node,
+      final List<Vector<String>> identifiers) {
+
+    for (final ASTMethodDeclaration method : node
+        .findDescendantsOfType(ASTMethodDeclaration.class)) {
+      if (!isChanged(method)) {
+        continue;
+      }
+
+      final String methodName = method.getMethodName();
+      final String methodType = getMethodType(method);
+
+      addTerms(identifiers,
+          collectionTypeSingleNameMethod ? singleNameTerms(methodName, methodType) : null);
+      addTerms(identifiers,
+          transformMethodDoesNotReturn ? conversionNameTerms(methodName, methodType) : null);
+      addTerms(identifiers,
+          singleTypeCollectionNameMethod ? returnedNameTerms(methodName, methodType) : null);
+    }
+  }
+
   @Override
   public Object visit(ASTMethodDeclaration method, final Object data) {
 
-    final List<Comment> comments = method.getFirstParentOfType(ASTCompilationUnit.class)
-        .getComments();
+    if (!isChanged(method)) {
+      return data;
+    }
+
+    final CommentIndex comments = needsComments
+        ? CommentIndex.of(method.getFirstParentOfType(ASTCompilationUnit.class))
+        : null;
     final String className = method.getFirstParentOfType(ASTClassOrInterfaceDeclaration.class)
         .getImage();
+    final MethodFacts facts = needsFacts ? new MethodFacts(method) : null;
     String methodName;
     String methodType;
     List<String> result = new ArrayList<String>();
 
-    init();
-
     methodName = method.getMethodName().toString();
     methodType = getMethodType(method);
 
@@ -247,108 +378,125 @@ public class MethodsLAPDRule extends AbstractLAPDRule {
       //
       // }
 
+      /*
+       * cheapest first: the detectors checking names and types only, then B1
+       * reading the comments, then the detectors calling the tagger or WordNet,
+       * which check names and types again before any NLP work.
+       */
       // A2
-      if (this.detectIsMethodNotBoolean(methodName, methodType)) {
+      if (isMethodNotBoolean && this.detectIsMethodNotBoolean(methodName, methodType)) {
 
-        addViolationWithMessage(data, method,
-            "LAPD - A2: isX() method should not return more than a boolean. " + SIGNATURE,
-            new Object[] { className, methodName, methodType });
+        reportViolation(data, method, "A2",
+            "isX() method should not return more than a boolean. " + SIGNATURE,
+            new Object[] { className, methodName, methodType }, null);
       }
 
       // A3
-      if (this.detectSetMethodReturns(method, methodName, methodType)) {
+      if (setMethodReturns && this.detectSetMethodReturns(method, facts, methodName, methodType)) {
 
-        addViolationWithMessage(data, method,
-            "LAPD - A3: setX() method should not return. " + SIGNATURE,
-            new Object[] { className, methodName, methodType });
+        reportViolation(data, method, "A3",
+            "setX() method should not return. " + SIGNATURE,
+            new Object[] { className, methodName, methodType }, null);
       }
 
-      // A4
-      if (this.detectCollectionTypeSingleNameMethod(methodName, methodType)) {
+      // B2
+      if (validationMethodDoesNotConfirm
+          && this.detectValidationMethodDoesNotConfirm(facts, methodName, methodType)) {
 
-        addViolationWithMessage(data, method,
-            "LAPD - A4: Expecting but not getting single instance. " + SIGNATURE,
-            new Object[] { className, methodName, methodType });
+        reportViolation(data, method, "B2",
+            "Method performing validation should return. " + SIGNATURE,
+            new Object[] { className, methodName, methodType }, null);
       }
 
-      // B1
-      String notImplementedCondition = this.detectNotImplementedCondition(method, methodName,
-          methodType, comments);
-      if (notImplementedCondition != null) {
+      // B3
+      if (getMethodDoesNotReturn && this.detectGetMethodDoesNotReturn(methodName, methodType)) {
 
-        addViolationWithMessage(data, method,
-            "LAPD - B1: Method comments document a not implemented condition: ''{0} [...]'' "
-                + SIGNATURE,
-            new Object[] { className, methodName, methodType, notImplementedCondition });
+        reportViolation(data, method, "B3",
+            "getX() method should return. " + SIGNATURE,
+            new Object[] { className, methodName, methodType }, null);
+      }
+
+      // B4
+      if (falseBooleanMethod && this.detectFalseBooleanMethod(methodName, methodType)) {
 
+        reportViolation(data, method, "B4",
+            "Method name is predicate but nothing is returned. " + SIGNATURE,
+            new Object[] { className, methodName, methodType }, null);
       }
 
-      // B2
-      if (this.detectValidationMethodDoesNotConfirm(method, methodName, methodType)) {
+      // B7
+      if (getMethodDoesNotReturnAttribute
+          && this.detectGetMethodDoesNotReturnAttribute(method, facts, methodName, methodType)) {
+        reportViolation(data, method, "B7",
+            "getX() method should return the corresponding 'X' attribute. " + SIGNATURE,
+            new Object[] { className, methodName, methodType }, null);
 
-        addViolationWithMessage(data, method,
-            "LAPD - B2: Method performing validation should return. " + SIGNATURE,
-            new Object[] { className, methodName, methodType });
       }
 
-      // B3
-      if (this.detectGetMethodDoesNotReturn(methodName, methodType)) {
+      // B1
+      String notImplementedCondition = this.notImplementedCondition
+          ? this.detectNotImplementedCondition(method, facts, methodName, methodType, comments)
+          : null;
+      if (notImplementedCondition != null) {
+
+        reportViolation(data, method, "B1",
+            "Method comments document a not implemented condition: ''{0} [...]'' "
+                + SIGNATURE,
+            new Object[] { className, methodName, methodType, notImplementedCondition }, null);
 
-        addViolationWithMessage(data, method,
-            "LAPD - B3: getX() method should return. " + SIGNATURE,
-            new Object[] { className, methodName, methodType });
       }
 
-      // B4
-      if (this.detectFalseBooleanMethod(methodName, methodType)) {
+      // A4
+      if (collectionTypeSingleNameMethod
+          && (Boolean) this.signatureVerdict("A4", methodName, methodType)) {
 
-        addViolationWithMessage(data, method,
-            "LAPD - B4: Method name is predicate but nothing is returned. " + SIGNATURE,
-            new Object[] { className, methodName, methodType });
+        reportViolation(data, method, "A4",
+            "Expecting but not getting single instance. " + SIGNATURE,
+            new Object[] { className, methodName, methodType }, null);
       }
 
       // B5
-      if (this.detectTransformMethodDoesNotreturn(methodName, methodType)) {
+      if (transformMethodDoesNotReturn
+          && (Boolean) this.signatureVerdict("B5", methodName, methodType)) {
 
-        addViolationWithMessage(data, method,
-            "LAPD - B5: Method transforming an object does not return the tranformed object. "
+        reportViolation(data, method, "B5",
+            "Method transforming an object does not return the tranformed object. "
                 + SIGNATURE,
-            new Object[] { className, methodName, methodType });
+            new Object[] { className, methodName, methodType }, null);
       }
 
       // B6
-      if (this.detectSingleTypeCollectionNameMethod(methodName, methodType)) {
+      if (singleTypeCollectionNameMethod
+          && (Boolean) this.signatureVerdict("B6", methodName, methodType)) {
 
-        addViolationWithMessage(data, method,
-            "LAPD - B6: Method type indicates single object but the name indicates multiple objects. "
+        reportViolation(data, method, "B6",
+            "Method type indicates single object but the name indicates multiple objects. "
                 + SIGNATURE,
-            new Object[] { className, methodName, methodType });
+            new Object[] { className, methodName, methodType }, null);
       }
 
-      // B7
-      if (this.detectGetMethodDoesNotReturnAttribute(method, methodName, methodType)) {
-        addViolationWithMessage(data, method,
-            "LAPD - B7: getX() method should return the corresponding 'X' attribute. " + SIGNATURE,
-            new Object[] { className, methodName, methodType });
-
-      }
       // C1
-      result = this.detectOppositeMethodNameAndMethodType(methodName, methodType);
+      result = oppositeMethodNameAndMethodType
+          ? VerdictCache.toPair(this.signatureVerdict("C1", methodName, methodType))
+          : null;
       if (result != null) {
 
-        addViolationWithMessage(data, method,
-            "LAPD - C1: Method name and type use antonyms: {0} vs {1}. " + SIGNATURE,
-            new Object[] { className, methodName, methodType, result.get(0), result.get(1) });
+        reportViolation(data, method, "C1",
+            "Method name and type use antonyms: {0} vs {1}. " + SIGNATURE,
+            new Object[] { className, methodName, methodType, result.get(0), result.get(1) },
+            result);
       }
 
       // C2
-      result = this.detectOppositeCommentAndMethodSignature(method, methodName, methodType,
-          comments);
+      result = oppositeCommentAndMethodSignature
+          ? this.detectOppositeCommentAndMethodSignature(method, methodName, methodType, comments)
+          : null;
       if (result != null) {
 
-        addViolationWithMessage(data, method,
-            "LAPD - C2: Method comments and signature use antonyms: {0} vs {1}" + SIGNATURE,
-            new Object[] { className, methodName, methodType, result.get(0), result.get(1) });
+        reportViolation(data, method, "C2",
+            "Method comments and signature use antonyms: {0} vs {1}" + SIGNATURE,
+            new Object[] { className, methodName, methodType, result.get(0), result.get(1) },
+            result);
       }
 
     } catch (JWNLException e) {
@@ -360,6 +508,38 @@ public class MethodsLAPDRule extends AbstractLAPDRule {
     return data;
   }
 
+  /*
+   * the verdict of a detector tagging or querying WordNet for the name and the
+   * type of the method only, computed once for all the methods with the same
+   * signature. The string checks of A2, B3 and B4 cost less than a lookup.
+   */
+  private Object signatureVerdict(final String detector, final String methodName,
+      final String methodType) throws JWNLException {
+
+    final BoundedCache<String, Object> cache = VerdictCache.of(detector, verdictCacheSize);
+    final String key = VerdictCache.key(configuration, methodName, methodType);
+    Object verdict = cache.get(key);
+
+    if (verdict == null) {
+      switch (detector) {
+      case "A4":
+        verdict = this.detectCollectionTypeSingleNameMethod(methodName, methodType);
+        break;
+      case "B5":
+        verdict = this.detectTransformMethodDoesNotreturn(methodName, methodType);
+        break;
+      case "B6":
+        verdict = this.detectSingleTypeCollectionNameMethod(methodName, methodType);
+        break;
+      default:
+        verdict = VerdictCache
+            .fromPair(this.detectOppositeMethodNameAndMethodType(methodName, methodType));
+      }
+      cache.put(key, verdict);
+    }
+    return verdict;
+  }
+
   // TODO: improve by identifying the different POS of terms in a
   // question/predicate
 
@@ -440,9 +620,10 @@ public class MethodsLAPDRule extends AbstractLAPDRule {
 
   // B1
   private String detectNotImplementedCondition(final ASTMethodDeclaration method,
-      final String methodName, final String methodType, final List<Comment> comments) {
+      final MethodFacts facts, final String methodName, final String methodType,
+      final CommentIndex comments) {
 
-    if (method.hasDescendantOfType(ASTBlockStatement.class)) {
+    if (facts.hasBlockStatement()) {
 
       List<Comment> methodComments = getMethodComments(method, comments);
 
@@ -461,14 +642,8 @@ public class MethodsLAPDRule extends AbstractLAPDRule {
 
         if (index != -1) {
 
-          if (!method.hasDecendantOfAnyType(ASTIfStatement.class, ASTSwitchStatement.class)
-              && getCalledMethodsNames(method).size() == 0) {
-            if (!method.hasDecendantOfAnyType(ASTEqualityExpression.class,
-                ASTRelationalExpression.class, ASTShiftExpression.class,
-                ASTConditionalOrExpression.class, ASTInclusiveOrExpression.class,
-                ASTConditionalAndExpression.class, ASTAndExpression.class,
-                ASTAssignmentExpression.class, ASTConditionalExpression.class,
-                ASTInstanceOfExpression.class)) {
+          if (!facts.hasIfOrSwitch() && facts.getCalledMethodsNames().isEmpty()) {
+            if (!facts.hasConditionOperator()) {
 
               String result = splittedMethodComment.get(index);
               int i = 0;
@@ -495,8 +670,8 @@ public class MethodsLAPDRule extends AbstractLAPDRule {
   }
 
   // A3
-  private boolean detectSetMethodReturns(final ASTMethodDeclaration method, final String methodName,
-      final String methodType) {
+  private boolean detectSetMethodReturns(final ASTMethodDeclaration method,
+      final MethodFacts facts, final String methodName, final String methodType) {
 
     if (!"void".equals(methodType) && !"boolean".equals(methodType)
         && !"status".contains(methodType)) {
@@ -516,32 +691,19 @@ public class MethodsLAPDRule extends AbstractLAPDRule {
           }
         }
 
-        /* check if the method modifies an attribute */
-        final List<ASTFieldDeclaration> attributes = method.jjtGetParent()
-            .findDescendantsOfType(ASTFieldDeclaration.class);
-        boolean isModifier = false; // will be true if modification
-                                    // occurs to an attribute
+        /* check if the method modifies an attribute of its class */
         final String potentialAttribute = methodName.substring(3);
-
-        for (final ASTFieldDeclaration attribute : attributes) {
-          if (attribute.getVariableName().equalsIgnoreCase(potentialAttribute)) {
-            isModifier = true;
-            break;
-          }
-        }
+        final boolean isModifier = FieldIndex
+            .of(method.getFirstParentOfType(ASTClassOrInterfaceDeclaration.class))
+            .hasField(potentialAttribute);
 
         if (isModifier) {
           /*
            * check if it returns only the modified attribute, then it is OK.
            */
-          final List<ASTReturnStatement> returnStatements = method
-              .findDescendantsOfType(ASTReturnStatement.class);
-          if (returnStatements != null) {
-            for (final ASTReturnStatement returnStatement : returnStatements) {
-              if (returnStatement.jjtGetLastToken().toString()
-                  .equalsIgnoreCase(potentialAttribute)) {
-                return false;
-              }
+          for (final String returnedName : facts.getReturnedNames()) {
+            if (potentialAttribute.equalsIgnoreCase(returnedName)) {
+              return false;
             }
           }
           return true;
@@ -556,29 +718,43 @@ public class MethodsLAPDRule extends AbstractLAPDRule {
   private boolean detectCollectionTypeSingleNameMethod(final String methodName,
       final String methodType) {
 
-    if (isCollection(methodType) && !isCollection(methodName)) {
+    final Vector<String> splittedMethodName = singleNameTerms(methodName, methodType);
 
-      final Vector<String> splittedMethodName = Splitter.methodSplitter(methodName);
-      final String lastPOS = CustomParser.getPOS(splittedMethodName.lastElement(),
-          splittedMethodName);
+    if (splittedMethodName == null) {
+      stats.record("A4", DetectorStats.Stage.LEXICAL);
+      return false;
+    }
+    stats.record("A4", DetectorStats.Stage.EVALUATED);
 
-      if (lastPOS != null && "NN".equalsIgnoreCase(lastPOS)
-          && !splittedMethodName.lastElement().endsWith("s")
-          && !CustomParser.hasPOS("NNS", splittedMethodName)) {
+    final TaggedIdentifier taggedMethodName = parser.tag(splittedMethodName);
+    final String lastPOS = taggedMethodName.getPOS(splittedMethodName.lastElement());
 
-        return true;
-      }
+    return lastPOS != null && "NN".equalsIgnoreCase(lastPOS) && !taggedMethodName.hasPOS("NNS");
+  }
+
+  /*
+   * the terms of the name A4 tags: a collection type, and a name that is
+   * neither a collection nor ends with a plural; null otherwise.
+   */
+  private Vector<String> singleNameTerms(final String methodName, final String methodType) {
+
+    if (!isCollection(methodType) || isCollection(methodName)) {
+      return null;
     }
-    return false;
+
+    final Vector<String> splittedMethodName = Splitter.methodSplitter(methodName);
+
+    return splittedMethodName.isEmpty() || splittedMethodName.lastElement().endsWith("s") ? null
+        : splittedMethodName;
   }
 
   // B2
-  private boolean detectValidationMethodDoesNotConfirm(final ASTMethodDeclaration method,
+  private boolean detectValidationMethodDoesNotConfirm(final MethodFacts facts,
       final String methodName, final String methodType) {
 
     String exceptions = "";
-    final ASTThrowStatement methodException = method
-        .getFirstDescendantOfType(ASTThrowStatement.class);
+    final ASTThrowStatement methodException = facts.getThrowStatements().isEmpty() ? null
+        : facts.getThrowStatements().get(0);
 
     if (methodException != null && methodException.jjtGetNumChildren() > 0) {
 
@@ -590,11 +766,11 @@ public class MethodsLAPDRule extends AbstractLAPDRule {
       if (methodName.startsWith(word)) {
 
         if ("void".equalsIgnoreCase(methodType) && (exceptions == null || "".equals(exceptions))
-            && method.findDescendantsOfType(ASTThrowStatement.class).size() == 0) {
+            && facts.getThrowStatements().isEmpty()) {
 
           // check if the method contains calls to Assert
           boolean callsAssert = false;
-          final List<String> methodCalls = getCalledMethodsNames(method);
+          final List<String> methodCalls = facts.getCalledMethodsNames();
 
           for (final String calledMethod : methodCalls) {
 
@@ -643,72 +819,103 @@ public class MethodsLAPDRule extends AbstractLAPDRule {
               .get(methodNameVector.indexOf(firstElement) + 1).equalsIgnoreCase("be"))) {
 
         result = true;
-      } else if (!"to".equalsIgnoreCase(firstElement) && !methodName.endsWith("To")) {
-
-        if (!CustomParser.hasPOSInAnyForm("VB", methodNameVector)
-            && (methodNameVector.contains("to") || methodNameVector.size() > 1
-                && methodName.toLowerCase().matches("[a-z]+2[a-z]+"))) {
-
-          result = true;
-        }
+      } else if (isConversionName(methodName, methodNameVector)) {
 
+        stats.record("B5", DetectorStats.Stage.EVALUATED);
+        result = !parser.hasPOSInAnyForm("VB", methodNameVector);
+      } else {
+        stats.record("B5", DetectorStats.Stage.LEXICAL);
       }
+    } else {
+      stats.record("B5", DetectorStats.Stage.LEXICAL);
     }
     return result;
   }
 
+  /*
+   * a name converting something, such as stringToInt or str2int, that does not
+   * start with "to".
+   */
+  private static boolean isConversionName(final String methodName,
+      final Vector<String> methodNameVector) {
+
+    return !"to".equalsIgnoreCase(methodNameVector.firstElement()) && !methodName.endsWith("To")
+        && (methodNameVector.contains("to") || methodNameVector.size() > 1
+            && CONVERSION_NAME.matcher(methodName.toLowerCase()).matches());
+  }
+
+  /*
+   * the terms of the name B5 tags: a void method with a conversion name; null
+   * otherwise.
+   */
+  private static Vector<String> conversionNameTerms(final String methodName,
+      final String methodType) {
+
+    if (!"void".equalsIgnoreCase(methodType) || "test".startsWith(methodName)) {
+      return null;
+    }
+
+    final Vector<String> methodNameVector = Splitter.methodSplitter(methodName);
+
+    return !methodNameVector.isEmpty() && isConversionName(methodName, methodNameVector)
+        ? methodNameVector
+        : null;
+  }
+
   // B6
   private boolean detectSingleTypeCollectionNameMethod(final String methodName,
       final String methodType) {
 
-    if (isReturning(methodName) && !isCollection(methodType)) {
+    final Vector<String> splittedMethodName = returnedNameTerms(methodName, methodType);
 
-      final Vector<String> splittedMethodName = Splitter.methodSplitter(methodName);
-      final String lastPOS = CustomParser.getPOS(splittedMethodName.lastElement(),
-          splittedMethodName);
+    if (splittedMethodName == null) {
+      stats.record("B6", DetectorStats.Stage.LEXICAL);
+      return false;
+    }
+    stats.record("B6", DetectorStats.Stage.EVALUATED);
 
-      if (splittedMethodName.lastElement().length() > 3) {
-        if (lastPOS != null && lastPOS.equalsIgnoreCase("NNS")) {
+    final String lastPOS = parser.getPOS(splittedMethodName.lastElement(),
+        splittedMethodName);
 
-          return true;
-        }
-      }
+    return lastPOS != null && lastPOS.equalsIgnoreCase("NNS");
+  }
+
+  /*
+   * the terms of the name B6 tags: a returning method of a single type whose
+   * name ends with a word long enough to be a plural; null otherwise.
+   */
+  private Vector<String> returnedNameTerms(final String methodName, final String methodType) {
+
+    if (!isReturning(methodName) || isCollection(methodType)) {
+      return null;
     }
-    return false;
+
+    final Vector<String> splittedMethodName = Splitter.methodSplitter(methodName);
+
+    return splittedMethodName.isEmpty() || splittedMethodName.lastElement().length() <= 3 ? null
+        : splittedMethodName;
   }
 
   // B7
   private boolean detectGetMethodDoesNotReturnAttribute(final ASTMethodDeclaration method,
-      final String methodName, final String methodType) {
+      final MethodFacts facts, final String methodName, final String methodType) {
     if (!methodName.startsWith("get")) {
       return false;
     }
 
     final String potentialAttribute = methodName.substring(3);
-    boolean isAccessor = false;
-
-    final List<ASTVariableDeclarator> variables = method
-        .findDescendantsOfType(ASTVariableDeclarator.class);
-    for (ASTVariableDeclarator variable : variables) {
-      if (variable.getFirstChildOfType(ASTVariableDeclaratorId.class).getImage().equalsIgnoreCase(
-          potentialAttribute) && getNodeType(variable).equalsIgnoreCase(methodType)) {
-        isAccessor = true;
-        break;
-      }
-    }
+    final String attributeType = FieldIndex
+        .of(method.getFirstParentOfType(ASTClassOrInterfaceDeclaration.class))
+        .getType(potentialAttribute);
+    final boolean isAccessor = attributeType != null
+        && attributeType.equalsIgnoreCase(methodType);
 
     if (isAccessor) {
-      List<ASTReturnStatement> returnStatements = method
-          .findDescendantsOfType(ASTReturnStatement.class);
-
-      if (returnStatements != null) {
-        for (ASTReturnStatement returnStatement : returnStatements) {
-          if (!returnStatement.jjtGetLastToken().toString().equalsIgnoreCase(potentialAttribute)) {
-            return true;
-          }
-
+      /* a getter returning another variable than its attribute */
+      for (final String returnedName : facts.getReturnedNames()) {
+        if (returnedName != null && !returnedName.equalsIgnoreCase(potentialAttribute)) {
+          return true;
         }
-
       }
     }
     return false;
@@ -718,27 +925,29 @@ public class MethodsLAPDRule extends AbstractLAPDRule {
   private List<String> detectOppositeMethodNameAndMethodType(final String methodName,
       final String methodType) throws JWNLException {
 
-    final Vector<String> splittedMethodName = Splitter.methodSplitter(methodName);
-    final Vector<String> splittedMethodType = Splitter.methodSplitter(methodType);
+    final int[] splittedMethodName = antonymCandidates(Splitter.methodTermIds(methodName));
+    final int[] splittedMethodType = splittedMethodName.length == 0 ? splittedMethodName
+        : antonymCandidates(Splitter.methodTermIds(methodType));
     List<String> result = new ArrayList<>();
 
-    for (final String termInName : splittedMethodName) {
+    if (splittedMethodType.length == 0) {
+      stats.record("C1", DetectorStats.Stage.DICTIONARY);
+      return null;
+    }
+    stats.record("C1", DetectorStats.Stage.EVALUATED);
 
-      if (!shouldBeIgnoredFromAntonyms(termInName)) {
+    for (final int termInName : splittedMethodName) {
 
-        for (final String termInType : splittedMethodType) {
+      for (final int termInType : splittedMethodType) {
 
-          if (!shouldBeIgnoredFromAntonyms(termInType)
-              && CustomDictionary.haveAntonyms(CustomDictionary.stringToIndexWordSet(termInName),
-                  CustomDictionary.stringToIndexWordSet(termInType))) {
+        if (CustomDictionary.haveAntonyms(termInName, termInType, antonymVerdicts)) {
 
-            result.add(termInName);
-            result.add(termInType);
-            return result;
-
-          }
+          result.add(Terms.name(termInName));
+          result.add(Terms.name(termInType));
+          return result;
 
         }
+
       }
     }
     return null;
@@ -746,42 +955,49 @@ public class MethodsLAPDRule extends AbstractLAPDRule {
 
   // C2
   private List<String> detectOppositeCommentAndMethodSignature(final ASTMethodDeclaration method,
-      final String methodName, final String methodType, final List<Comment> comments)
+      final String methodName, final String methodType, final CommentIndex comments)
       throws JWNLException {
 
     final List<String> result = new ArrayList<String>();
-
     final String methodComments = toString(getMethodComments(method, comments));
-    final Vector<String> splittedMethodName = Splitter.methodSplitter(methodName);
-    final Vector<String> splittedMethodType = Splitter.methodSplitter(methodType);
-    final Set<String> splittedMethodSignature = new HashSet<String>();
-
-    splittedMethodSignature.addAll(splittedMethodType);
-    splittedMethodSignature.addAll(splittedMethodName);
 
     if ("".equals(methodComments) && methodComments != null) {
 
+      final int[] splittedMethodSignature = antonymCandidates(Splitter
+          .union(Splitter.methodTermIds(methodType), Splitter.methodTermIds(methodName)));
+
+      if (splittedMethodSignature.length == 0) {
+        stats.record("C2", DetectorStats.Stage.DICTIONARY);
+        return null;
+      }
+      stats.record("C2", DetectorStats.Stage.EVALUATED);
+
       final Vector<String> splittedMethodComments = Splitter.commentSplitter(methodComments);
 
       for (final String commentWord : splittedMethodComments) {
 
-        if (!shouldBeIgnoredFromAntonyms(commentWord)) {
+        /* checked as a string first: only comment words with antonyms are interned */
+        if (!shouldBeIgnoredFromAntonyms(commentWord)
+            && CustomDictionary.mightHaveAntonym(commentWord)) {
+
+          final int commentTerm = Terms.id(commentWord);
 
-          for (final String signatureWord : splittedMethodSignature) {
+          for (final int signatureTerm : splittedMethodSignature) {
 
-            if (!shouldBeIgnoredFromAntonyms(signatureWord)
-                && CustomDictionary.haveAntonyms(CustomDictionary.stringToIndexWordSet(commentWord),
-                    CustomDictionary.stringToIndexWordSet(signatureWord))
-                && !commentWord.equalsIgnoreCase(signatureWord)) {
+            if (commentTerm != signatureTerm
+                && CustomDictionary.haveAntonyms(commentTerm, signatureTerm,
+                    antonymVerdicts)) {
 
               result.add(commentWord);
-              result.add(signatureWord);
+              result.add(Terms.name(signatureTerm));
               return result;
             }
 
           }
         }
       }
+    } else {
+      stats.record("C2", DetectorStats.Stage.LEXICAL);
     }
     return null;
   }
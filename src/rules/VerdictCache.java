@@ -0,0 +1,101 @@
+package rules;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import utils.BoundedCache;
+
+/*
+ * verdicts of the detectors reading only the name and the type of a member,
+ * shared by all the files and threads of a run: the same signatures, such as
+ * getName(): String or List<Item> items, recur across a code base. There is a
+ * cache per detector, so that the hit rate of each one is known, and per
+ * size, so that rules configured with different sizes do not reset each other.
+ */
+final class VerdictCache {
+
+  static final int DEFAULT_SIZE = 20000;
+
+  /* cached in place of a null antonym pair */
+  private static final List<String> NO_PAIR = Collections.emptyList();
+
+  private static final Map<String, BoundedCache<String, Object>> CACHES = new TreeMap<>();
+  /* ids of the configurations met, by their full text */
+  private static final Map<String, String> CONFIGURATIONS = new HashMap<>();
+
+  private VerdictCache() {
+  }
+
+  static synchronized BoundedCache<String, Object> of(final String detector, final int size) {
+
+    final String name = size == DEFAULT_SIZE ? detector : detector + "/" + size;
+    BoundedCache<String, Object> cache = VerdictCache.CACHES.get(name);
+
+    if (cache == null) {
+      cache = new BoundedCache<String, Object>(size, BoundedCache.Eviction.LRU);
+      VerdictCache.CACHES.put(name, cache);
+    }
+    return cache;
+  }
+
+  /*
+   * a short id of the configuration of a rule, the same for equal
+   * configurations and distinct for different ones: the full text of the
+   * configuration is compared, not a hash of it.
+   */
+  static synchronized String configurationId(final List<List<String>> parts) {
+
+    final StringBuilder text = new StringBuilder();
+
+    for (final List<String> part : parts) {
+      for (final String value : part) {
+        text.append(value).append('\u0001');
+      }
+      text.append('\u0000');
+    }
+
+    final String configuration = text.toString();
+    String id = VerdictCache.CONFIGURATIONS.get(configuration);
+
+    if (id == null) {
+      id = Integer.toString(VerdictCache.CONFIGURATIONS.size());
+      VerdictCache.CONFIGURATIONS.put(configuration, id);
+    }
+    return id;
+  }
+
+  /*
+   * the configuration is part of the key: rules configured differently do
+   * not share their verdicts.
+   */
+  static String key(final String configuration, final String name, final String type) {
+    return configuration + '\u0000' + name + '\u0000' + type;
+  }
+
+  static Object fromPair(final List<String> pair) {
+    return pair == null ? NO_PAIR : pair;
+  }
+
+  @SuppressWarnings("unchecked")
+  static List<String> toPair(final Object verdict) {
+    return verdict == NO_PAIR ? null : (List<String>) verdict;
+  }
+
+  static synchronized String describe() {
+
+    final StringBuilder result = new StringBuilder();
+
+    for (final Map.Entry<String, BoundedCache<String, Object>> entry : VerdictCache.CACHES
+        .entrySet()) {
+      if (result.length() > 0) {
+        result.append("; ");
+      }
+      result.append(entry.getKey()).append(": ").append(entry.getValue());
+    }
+    return result.toString();
+  }
+
+}
@@ -0,0 +1,351 @@
+package rules;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * writes the violations to a file as the rules find them, instead of adding
+ * them to the PMD report that is kept until the end of the run. The records
+ * are serialized by the rule threads and handed to a writer thread through a
+ * bounded queue: when the disk falls behind, the rules wait, so memory does
+ * not grow with the number of violations.
+ *
+ * Formats, with a stable schema:
+ *
+ * jsonl   one object per line, in this key order:
+ *         {"version":1,"rule":"C1","ruleName":"MethodsLAPDRule","file":"A.java",
+ *          "beginLine":12,"endLine":14,"class":"A","member":"open","type":"Closed",
+ *          "antonyms":["open","closed"],"message":"..."}
+ *         antonyms is empty for the detectors without an antonym pair
+ * sarif   a SARIF 2.1.0 log with a single run; a result per violation, with the
+ *         rule code as ruleId and the fields above as properties. The end of
+ *         the log is written whenever the writer catches up and overwritten by
+ *         the next result, so the file is a complete log between violations,
+ *         also in Eclipse where the stream stays open until the JVM exits
+ *
+ * The streams are shared by the rules writing to the same file, and closed by
+ * closeAll() or when the JVM exits. Only the records the writer thread wrote
+ * count in getWritten().
+ */
+public final class ViolationStream {
+
+  public static final String JSON_LINES = "jsonl";
+  public static final String SARIF = "sarif";
+  public static final int DEFAULT_BUFFER = 1024;
+
+  private static final int VERSION = 1;
+  private static final String END = new String("end");
+  private static final String SARIF_END = "\n]}]}\n";
+  private static final Map<String, ViolationStream> OPEN = new HashMap<String, ViolationStream>();
+  private static boolean hooked;
+
+  private final String path;
+  private final boolean sarif;
+  private final FileOutputStream file;
+  private final Writer out;
+  private final BlockingQueue<String> records;
+  private final Thread writer;
+  private final AtomicLong written = new AtomicLong();
+  private volatile boolean closed;
+
+  private ViolationStream(final String path, final String format, final int buffer)
+      throws IOException {
+
+    if (!JSON_LINES.equals(format) && !SARIF.equals(format)) {
+      throw new IOException("unknown violation stream format: " + format);
+    }
+    this.path = path;
+    this.sarif = SARIF.equals(format);
+    this.file = new FileOutputStream(path);
+    this.out = new BufferedWriter(new OutputStreamWriter(this.file, StandardCharsets.UTF_8));
+    this.records = new ArrayBlockingQueue<String>(Math.max(1, buffer));
+    this.writer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        ViolationStream.this.drain();
+      }
+    }, "lapd-violations");
+    this.writer.setDaemon(true);
+    this.writer.start();
+  }
+
+  /*
+   * the stream writing to the file, opened on first use. The format and the
+   * buffer size are those of the first call.
+   */
+  public static synchronized ViolationStream open(final String path, final String format,
+      final int buffer) throws IOException {
+
+    final String key = new File(path).getAbsolutePath();
+    ViolationStream stream = ViolationStream.OPEN.get(key);
+
+    if (stream == null) {
+      stream = new ViolationStream(key, format, buffer);
+      ViolationStream.OPEN.put(key, stream);
+    }
+    if (!ViolationStream.hooked) {
+      ViolationStream.hooked = true;
+      Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+        @Override
+        public void run() {
+          ViolationStream.closeAll();
+        }
+      }, "lapd-violations-close"));
+    }
+    return stream;
+  }
+
+  /*
+   * waits for the pending records and closes the files; returns the number of
+   * violations they received.
+   */
+  public static long closeAll() {
+
+    final List<ViolationStream> streams;
+    long total = 0;
+
+    synchronized (ViolationStream.class) {
+      streams = new ArrayList<ViolationStream>(ViolationStream.OPEN.values());
+      ViolationStream.OPEN.clear();
+    }
+    for (final ViolationStream stream : streams) {
+      stream.close();
+      total += stream.getWritten();
+    }
+    return total;
+  }
+
+  /*
+   * blocks while the buffer is full. Violations found after the stream is
+   * closed are dropped, as are those still queued when it closes.
+   */
+  void write(final String rule, final String ruleName, final String file, final int beginLine,
+      final int endLine, final String className, final String member, final String type,
+      final List<String> antonyms, final String message) {
+
+    final String record = this.sarif
+        ? ViolationStream.toSarif(rule, ruleName, file, beginLine, endLine, className, member,
+            type, antonyms, message)
+        : ViolationStream.toJson(rule, ruleName, file, beginLine, endLine, className, member,
+            type, antonyms, message);
+
+    try {
+      while (!this.closed) {
+        if (this.records.offer(record, 100, TimeUnit.MILLISECONDS)) {
+          return;
+        }
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void close() {
+
+    this.closed = true;
+    try {
+      this.records.put(END);
+      this.writer.join();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /*
+   * runs on the writer thread, flushing whenever the queue is empty.
+   */
+  private void drain() {
+
+    boolean first = true;
+    boolean failed = false;
+
+    try {
+      if (this.sarif) {
+        this.out.write("{\"version\":\"2.1.0\","
+            + "\"$schema\":\"https://json.schemastore.org/sarif-2.1.0.json\","
+            + "\"runs\":[{\"tool\":{\"driver\":{\"name\":\"LAPD\",\"semanticVersion\":\""
+            + VERSION + ".0.0\"}},\"results\":[\n");
+        this.flush();
+      }
+    } catch (final IOException e) {
+      e.printStackTrace();
+      failed = true;
+    }
+
+    while (true) {
+      final String record;
+      try {
+        record = this.records.take();
+      } catch (final InterruptedException e) {
+        break;
+      }
+      if (record == END) {
+        break;
+      }
+      if (failed) {
+        /* keeps draining so that the rules do not wait on a broken file */
+        continue;
+      }
+      try {
+        if (this.sarif && !first) {
+          this.out.write(",\n");
+        }
+        this.out.write(record);
+        if (!this.sarif) {
+          this.out.write('\n');
+        }
+        first = false;
+        this.written.incrementAndGet();
+        if (this.records.isEmpty()) {
+          this.flush();
+        }
+      } catch (final IOException e) {
+        System.err.println("LAPD violation stream " + this.path + ": " + e);
+        failed = true;
+      }
+    }
+
+    try {
+      if (this.sarif && !failed) {
+        this.out.write(SARIF_END);
+      }
+      this.out.close();
+    } catch (final IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /*
+   * writes the end of a SARIF log and steps back before it, so that the next
+   * result replaces it.
+   */
+  private void flush() throws IOException {
+
+    if (this.sarif) {
+      this.out.write(SARIF_END);
+      this.out.flush();
+      final FileChannel channel = this.file.getChannel();
+      channel.position(channel.position() - SARIF_END.length());
+    } else {
+      this.out.flush();
+    }
+  }
+
+  public long getWritten() {
+    return this.written.get();
+  }
+
+  private static String toJson(final String rule, final String ruleName, final String file,
+      final int beginLine, final int endLine, final String className, final String member,
+      final String type, final List<String> antonyms, final String message) {
+
+    final StringBuilder json = new StringBuilder(256);
+
+    json.append("{\"version\":").append(VERSION);
+    json.append(",\"rule\":");
+    ViolationStream.quote(json, rule);
+    json.append(",\"ruleName\":");
+    ViolationStream.quote(json, ruleName);
+    json.append(",\"file\":");
+    ViolationStream.quote(json, file);
+    json.append(",\"beginLine\":").append(beginLine);
+    json.append(",\"endLine\":").append(endLine);
+    ViolationStream.appendSignature(json, className, member, type, antonyms);
+    json.append(",\"message\":");
+    ViolationStream.quote(json, message);
+    return json.append('}').toString();
+  }
+
+  private static String toSarif(final String rule, final String ruleName, final String file,
+      final int beginLine, final int endLine, final String className, final String member,
+      final String type, final List<String> antonyms, final String message) {
+
+    final StringBuilder json = new StringBuilder(384);
+
+    json.append("{\"ruleId\":");
+    ViolationStream.quote(json, rule);
+    json.append(",\"level\":\"warning\",\"message\":{\"text\":");
+    ViolationStream.quote(json, message);
+    json.append("},\"locations\":[{\"physicalLocation\":{\"artifactLocation\":{\"uri\":");
+    ViolationStream.quote(json, file == null ? null : file.replace('\\', '/'));
+    json.append("},\"region\":{\"startLine\":").append(Math.max(1, beginLine));
+    json.append(",\"endLine\":").append(Math.max(1, endLine));
+    json.append("}}}],\"properties\":{\"ruleName\":");
+    ViolationStream.quote(json, ruleName);
+    ViolationStream.appendSignature(json, className, member, type, antonyms);
+    return json.append("}}").toString();
+  }
+
+  private static void appendSignature(final StringBuilder json, final String className,
+      final String member, final String type, final List<String> antonyms) {
+
+    json.append(",\"class\":");
+    ViolationStream.quote(json, className);
+    json.append(",\"member\":");
+    ViolationStream.quote(json, member);
+    json.append(",\"type\":");
+    ViolationStream.quote(json, type);
+    json.append(",\"antonyms\":[");
+    if (antonyms != null) {
+      for (int i = 0; i < antonyms.size(); i++) {
+        if (i > 0) {
+          json.append(',');
+        }
+        ViolationStream.quote(json, antonyms.get(i));
+      }
+    }
+    json.append(']');
+  }
+
+  private static void quote(final StringBuilder json, final String value) {
+
+    if (value == null) {
+      json.append("null");
+      return;
+    }
+    json.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      final char c = value.charAt(i);
+
+      switch (c) {
+      case '"':
+        json.append("\\\"");
+        break;
+      case '\\':
+        json.append("\\\\");
+        break;
+      case '\n':
+        json.append("\\n");
+        break;
+      case '\r':
+        json.append("\\r");
+        break;
+      case '\t':
+        json.append("\\t");
+        break;
+      default:
+        if (c < 0x20) {
+          json.append(String.format("\\u%04x", (int) c));
+        } else {
+          json.append(c);
+        }
+      }
+    }
+    json.append('"');
+  }
+
+}
@@ -0,0 +1,152 @@
+package utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * size-bounded cache usable from several threads. The entries are spread over
+ * independently locked segments, each evicting its own entries in least
+ * recently used or insertion (first in, first out) order once full.
+ */
+public final class BoundedCache<K, V> {
+
+  public enum Eviction {
+    LRU, FIFO;
+
+    /*
+     * the eviction policy named by value, LRU if the name is unknown.
+     */
+    public static Eviction fromName(final String value) {
+      return "fifo".equalsIgnoreCase(value) ? FIFO : LRU;
+    }
+  }
+
+  private static final int SEGMENTS = 16;
+
+  private final Segment<K, V>[] segments;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final int capacity;
+  private final Eviction eviction;
+
+  @SuppressWarnings("unchecked")
+  public BoundedCache(final int capacity, final Eviction eviction) {
+
+    this.capacity = capacity;
+    this.eviction = eviction;
+    this.segments = new Segment[SEGMENTS];
+
+    final int segmentCapacity = Math.max(1, (capacity + SEGMENTS - 1) / SEGMENTS);
+    for (int i = 0; i < SEGMENTS; i++) {
+      this.segments[i] = new Segment<K, V>(segmentCapacity, eviction == Eviction.LRU);
+    }
+  }
+
+  public int getCapacity() {
+    return this.capacity;
+  }
+
+  public Eviction getEviction() {
+    return this.eviction;
+  }
+
+  private Segment<K, V> segment(final Object key) {
+
+    int hash = key.hashCode();
+    hash ^= hash >>> 16;
+    return this.segments[hash & SEGMENTS - 1];
+  }
+
+  /*
+   * the cached value, or null (counted as a miss) if there is none.
+   */
+  public V get(final K key) {
+
+    final Segment<K, V> segment = this.segment(key);
+    final V value;
+
+    synchronized (segment) {
+      value = segment.get(key);
+    }
+    if (value == null) {
+      this.misses.incrementAndGet();
+    } else {
+      this.hits.incrementAndGet();
+    }
+    return value;
+  }
+
+  public void put(final K key, final V value) {
+
+    if (this.capacity <= 0) {
+      return;
+    }
+    final Segment<K, V> segment = this.segment(key);
+
+    synchronized (segment) {
+      segment.put(key, value);
+    }
+  }
+
+  public int size() {
+
+    int size = 0;
+    for (final Segment<K, V> segment : this.segments) {
+      synchronized (segment) {
+        size += segment.size();
+      }
+    }
+    return size;
+  }
+
+  public void clear() {
+
+    for (final Segment<K, V> segment : this.segments) {
+      synchronized (segment) {
+        segment.clear();
+      }
+    }
+  }
+
+  public long getHits() {
+    return this.hits.get();
+  }
+
+  public long getMisses() {
+    return this.misses.get();
+  }
+
+  /*
+   * fraction of the lookups answered by the cache.
+   */
+  public double getHitRate() {
+
+    final long hitCount = this.hits.get();
+    final long total = hitCount + this.misses.get();
+    return total == 0 ? 0 : (double) hitCount / total;
+  }
+
+  @Override
+  public String toString() {
+    return this.size() + "/" + this.capacity + " entries, " + this.hits.get() + " hits, "
+        + this.misses.get() + " misses (" + Math.round(this.getHitRate() * 100) + "%)";
+  }
+
+  private static final class Segment<K, V> extends LinkedHashMap<K, V> {
+
+    private static final long serialVersionUID = 1L;
+    private final int capacity;
+
+    private Segment(final int capacity, final boolean accessOrder) {
+      super(16, 0.75f, accessOrder);
+      this.capacity = capacity;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(final Map.Entry<K, V> eldest) {
+      return this.size() > this.capacity;
+    }
+  }
+
+}
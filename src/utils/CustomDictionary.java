@@ -1,11 +1,26 @@
 
 package utils;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
 import java.net.URL;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
 
 import net.didion.jwnl.JWNL;
 import net.didion.jwnl.JWNLException;
@@ -17,39 +32,372 @@ import net.didion.jwnl.data.relationship.RelationshipFinder;
 import net.didion.jwnl.data.relationship.RelationshipList;
 import net.didion.jwnl.dictionary.Dictionary;
 
+/*
+ * access to WordNet through JWNL. JWNL caches are not thread-safe, so every
+ * lookup is serialized on the class; the dictionary itself is published once
+ * initialized. Antonym checks use a WordNetIndex built from the same files and
+ * only fall back to JWNL if it cannot be built. When the dictionary directory
+ * holds a DictionarySnapshot, the index comes from it and the questions on
+ * single words are answered without JWNL.
+ */
 final public class CustomDictionary {
 
-  private static CustomDictionary cd;
-  private static Dictionary d;
+  private static volatile CustomDictionary cd;
+  private static volatile Dictionary d;
   private String CONFIG_FILE_PATH = "platform:/plugin/polymtl.pmd.lapd/bin/utils/files/file_properties.xml";
+  private static final String DICTIONARY_PATH = "platform:/plugin/polymtl.pmd.lapd/bin/utils/dict/";
+
+  /*
+   * system property naming the directory of the WordNet files when running
+   * outside Eclipse.
+   */
+  public static final String DICTIONARY_DIRECTORY_PROPERTY = "lapd.dictionary";
+
+  private static final Object INDEX_LOCK = new Object();
+  private static volatile WordNetIndex index;
+  private static volatile boolean indexUnavailable = false;
+
+  private static final String EXTRACTED_MARKER = ".extracted";
+  /* the directory the dictionary of the jar was extracted to, see extractDictionary() */
+  private static volatile String extractedLocation;
+
+  private static volatile DictionarySnapshot snapshot;
+  private static volatile boolean snapshotUnavailable = false;
+
+  /* words certainly missing from the dictionary are answered without JWNL */
+  private static volatile LemmaFilter lemmaFilter;
+  private static volatile boolean lemmaFilterUnavailable = false;
+  private static final AtomicLong filteredLookups = new AtomicLong();
+
+  /*
+   * verdicts of haveAntonyms, positive and negative, for unordered pairs of
+   * term ids; a cache per size and eviction policy, see getAntonymCache.
+   */
+  public static final int DEFAULT_ANTONYM_CACHE_SIZE = 100000;
+  private static final Map<String, BoundedCache<Long, Boolean>> antonymVerdicts = new HashMap<String, BoundedCache<Long, Boolean>>();
+
+  /*
+   * time spent and heap retained when initializing JWNL, -1 until initialized.
+   */
+  private static long loadMillis = -1;
+  private static long loadBytes = -1;
 
   private CustomDictionary() throws FileNotFoundException {
+    final long start = System.currentTimeMillis();
+    final Runtime runtime = Runtime.getRuntime();
+    final long used = runtime.totalMemory() - runtime.freeMemory();
+
     try {
-      final URL url = new URL(CONFIG_FILE_PATH);
-      JWNL.initialize(url.openConnection().getInputStream());
+      JWNL.initialize(this.openConfiguration());
     } catch (final JWNLException | IOException e) {
       e.printStackTrace();
     }
 
     CustomDictionary.d = Dictionary.getInstance();
+    CustomDictionary.loadMillis = System.currentTimeMillis() - start;
+    CustomDictionary.loadBytes = runtime.totalMemory() - runtime.freeMemory() - used;
   }
 
-  public static CustomDictionary getInstance() {
-    if (CustomDictionary.cd == null) {
+  /*
+   * the JWNL configuration, pointing to the dictionary location actually used.
+   */
+  private InputStream openConfiguration() throws IOException {
+
+    final String location = CustomDictionary.getDictionaryLocation();
+    final InputStream in = PluginFileManager.isPlatformAvailable()
+        ? new URL(CONFIG_FILE_PATH).openConnection().getInputStream()
+        : CustomDictionary.class.getResourceAsStream("files/file_properties.xml");
+
+    if (in == null) {
+      throw new FileNotFoundException("utils/files/file_properties.xml");
+    }
+    if (DICTIONARY_PATH.equals(location)) {
+      return in;
+    }
+
+    final ByteArrayOutputStream configuration = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[8192];
+
+    try {
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        configuration.write(buffer, 0, read);
+      }
+    } finally {
+      in.close();
+    }
+    return new ByteArrayInputStream(configuration.toString("UTF-8")
+        .replace(DICTIONARY_PATH, location.replace("&", "&amp;")).getBytes("UTF-8"));
+  }
+
+  /*
+   * the URL of the directory of the dictionary files: the directory named by
+   * the lapd.dictionary system property, the plugin directory inside Eclipse,
+   * else the directory of the class path, extracted first if it is in a jar.
+   */
+  public static String getDictionaryLocation() {
+
+    final String directory = System.getProperty(DICTIONARY_DIRECTORY_PROPERTY);
+
+    if (directory != null && !directory.isEmpty()) {
+      return new File(directory).toURI().toString();
+    }
+    if (PluginFileManager.isPlatformAvailable()) {
+      return DICTIONARY_PATH;
+    }
+    final URL url = CustomDictionary.class.getResource("dict/");
+
+    if (url == null) {
+      return DICTIONARY_PATH;
+    }
+    return "jar".equals(url.getProtocol()) ? CustomDictionary.extractDictionary(url)
+        : url.toString();
+  }
+
+  /*
+   * JWNL and the indexes read the dictionary from a directory: the files in
+   * the jar are copied once to ~/.lapd, in a directory named after the jar and
+   * its version, and reused by the next runs.
+   */
+  private static String extractDictionary(final URL url) {
+
+    synchronized (CustomDictionary.INDEX_LOCK) {
+      if (CustomDictionary.extractedLocation != null) {
+        return CustomDictionary.extractedLocation;
+      }
       try {
-        CustomDictionary.cd = new CustomDictionary();
-      } catch (FileNotFoundException e) {
+        final JarURLConnection connection = (JarURLConnection) url.openConnection();
+        connection.setUseCaches(false);
+
+        try (JarFile jar = connection.getJarFile()) {
+          final File jarFile = new File(jar.getName());
+          final File target = new File(System.getProperty("user.home"),
+              ".lapd" + File.separator + "dict-" + Long.toHexString(PersistentTagCache
+                  .fingerprint(jarFile.getAbsolutePath(), String.valueOf(jarFile.length()),
+                      String.valueOf(jarFile.lastModified()))));
+
+          if (!new File(target, EXTRACTED_MARKER).isFile()) {
+            CustomDictionary.extract(jar, connection.getEntryName(), target);
+          }
+          CustomDictionary.extractedLocation = target.toURI().toString();
+        }
+      } catch (final IOException | RuntimeException e) {
         e.printStackTrace();
+        return url.toString();
+      }
+      return CustomDictionary.extractedLocation;
+    }
+  }
+
+  /*
+   * copies the files under the prefix to a temporary directory renamed to
+   * the target once complete, so that a concurrent run never reads a partial
+   * copy.
+   */
+  private static void extract(final JarFile jar, final String prefix, final File target)
+      throws IOException {
+
+    target.getParentFile().mkdirs();
+
+    final Path temporary = Files.createTempDirectory(target.getParentFile().toPath(),
+        target.getName());
+
+    for (final Enumeration<JarEntry> entries = jar.entries(); entries.hasMoreElements();) {
+      final JarEntry entry = entries.nextElement();
+      final String name = entry.getName();
+
+      /* the WordNet directory is flat */
+      if (!entry.isDirectory() && name.startsWith(prefix)
+          && name.indexOf('/', prefix.length()) < 0) {
+        try (InputStream in = jar.getInputStream(entry)) {
+          Files.copy(in, temporary.resolve(name.substring(prefix.length())));
+        }
+      }
+    }
+    Files.createFile(temporary.resolve(EXTRACTED_MARKER));
+
+    try {
+      Files.move(temporary, target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    } catch (final IOException e) {
+      /* another run extracted it meanwhile */
+      try (DirectoryStream<Path> files = Files.newDirectoryStream(temporary)) {
+        for (final Path file : files) {
+          Files.delete(file);
+        }
+      }
+      Files.delete(temporary);
+      if (!new File(target, EXTRACTED_MARKER).isFile()) {
+        throw e;
+      }
+    }
+  }
+
+  public static CustomDictionary getInstance() {
+    if (CustomDictionary.cd == null) {
+      synchronized (CustomDictionary.class) {
+        if (CustomDictionary.cd == null) {
+          try {
+            CustomDictionary.cd = new CustomDictionary();
+          } catch (FileNotFoundException e) {
+            e.printStackTrace();
+          }
+        }
       }
     }
     return CustomDictionary.cd;
   }
 
+  /*
+   * the dictionary is initialized on the first lookup.
+   */
   public static Dictionary getD() {
+    CustomDictionary.getInstance();
     return d;
   }
 
-  public static boolean areSynonyms(final IndexWord source, final IndexWord target)
+  /*
+   * the antonym index, built on first use; null if the dictionary files cannot
+   * be read, in which case the relations are searched with JWNL.
+   */
+  public static WordNetIndex getIndex() {
+
+    final DictionarySnapshot dictionarySnapshot = CustomDictionary.getSnapshot();
+    if (dictionarySnapshot != null) {
+      return dictionarySnapshot.getIndex();
+    }
+
+    if (CustomDictionary.index == null && !CustomDictionary.indexUnavailable) {
+      synchronized (CustomDictionary.INDEX_LOCK) {
+        if (CustomDictionary.index == null && !CustomDictionary.indexUnavailable) {
+          try {
+            final File directory = PluginFileManager.toDirectory(getDictionaryLocation());
+            CustomDictionary.index = WordNetIndex.build(directory);
+          } catch (final IOException | RuntimeException e) {
+            e.printStackTrace();
+            CustomDictionary.indexUnavailable = true;
+          }
+        }
+      }
+    }
+    return CustomDictionary.index;
+  }
+
+  /*
+   * the compiled snapshot of the dictionary directory, read on first use; null
+   * if the dictionary files cannot be read. A missing or outdated snapshot is
+   * compiled from the directory and saved for the next runs, see
+   * loadSnapshot().
+   */
+  public static DictionarySnapshot getSnapshot() {
+
+    if (CustomDictionary.snapshot == null && !CustomDictionary.snapshotUnavailable) {
+      synchronized (CustomDictionary.INDEX_LOCK) {
+        if (CustomDictionary.snapshot == null && !CustomDictionary.snapshotUnavailable) {
+          try {
+            CustomDictionary.snapshot = CustomDictionary.loadSnapshot(
+                PluginFileManager.toDirectory(getDictionaryLocation()));
+          } catch (final IOException | RuntimeException e) {
+            e.printStackTrace();
+          }
+          CustomDictionary.snapshotUnavailable = CustomDictionary.snapshot == null;
+        }
+      }
+    }
+    return CustomDictionary.snapshot;
+  }
+
+  /*
+   * the snapshot is looked for in the dictionary directory, then in ~/.lapd for
+   * the installs where that directory is read-only, and compiled when neither
+   * is up to date with the dictionary files; it is then saved in the first of
+   * them that is writable.
+   */
+  private static DictionarySnapshot loadSnapshot(final File directory) throws IOException {
+
+    final File[] candidates = { new File(directory, DictionarySnapshot.FILE_NAME),
+        new File(System.getProperty("user.home"), ".lapd" + File.separator
+            + Long.toHexString(PersistentTagCache.fingerprint(directory.getAbsolutePath()))
+            + '-' + DictionarySnapshot.FILE_NAME) };
+
+    for (final File file : candidates) {
+      if (DictionarySnapshot.isUpToDate(file, directory)) {
+        final DictionarySnapshot read = DictionarySnapshot.read(file);
+        if (read != null) {
+          return read;
+        }
+      }
+    }
+
+    final DictionarySnapshot compiled = DictionarySnapshot.compile(directory);
+
+    for (int i = 0; i < candidates.length; i++) {
+      try {
+        candidates[i].getAbsoluteFile().getParentFile().mkdirs();
+        compiled.write(candidates[i]);
+        break;
+      } catch (final IOException e) {
+        /* the next location is tried, the snapshot is used for this run anyway */
+        if (i == candidates.length - 1) {
+          e.printStackTrace();
+        }
+      }
+    }
+    return compiled;
+  }
+
+  /*
+   * the filter of the words of the dictionary, built on first use; null if the
+   * dictionary files cannot be read.
+   */
+  public static LemmaFilter getLemmaFilter() {
+
+    if (CustomDictionary.lemmaFilter == null && !CustomDictionary.lemmaFilterUnavailable) {
+      synchronized (CustomDictionary.INDEX_LOCK) {
+        if (CustomDictionary.lemmaFilter == null && !CustomDictionary.lemmaFilterUnavailable) {
+          try {
+            final File directory = PluginFileManager.toDirectory(getDictionaryLocation());
+            CustomDictionary.lemmaFilter = LemmaFilter.build(directory);
+          } catch (final IOException | RuntimeException e) {
+            e.printStackTrace();
+            CustomDictionary.lemmaFilterUnavailable = true;
+          }
+        }
+      }
+    }
+    return CustomDictionary.lemmaFilter;
+  }
+
+  private static boolean isCertainlyMissing(final String lemma) {
+
+    final LemmaFilter filter = CustomDictionary.getLemmaFilter();
+
+    if (filter != null && !filter.mightContain(lemma)) {
+      CustomDictionary.filteredLookups.incrementAndGet();
+      return true;
+    }
+    return false;
+  }
+
+  /*
+   * number of lookups answered by the lemma filter.
+   */
+  public static long getFilteredLookups() {
+    return CustomDictionary.filteredLookups.get();
+  }
+
+  public static boolean isLoaded() {
+    return CustomDictionary.d != null;
+  }
+
+  public static long getLoadMillis() {
+    return CustomDictionary.loadMillis;
+  }
+
+  public static long getLoadBytes() {
+    return CustomDictionary.loadBytes;
+  }
+
+  public static synchronized boolean areSynonyms(final IndexWord source, final IndexWord target)
       throws JWNLException {
 
     for (int i = 1; i <= source.getSenseCount(); i++) {
@@ -67,7 +415,7 @@ final public class CustomDictionary {
     return false;
   }
 
-  public static boolean areAntonyms(final IndexWord source, final IndexWord target)
+  public static synchronized boolean areAntonyms(final IndexWord source, final IndexWord target)
       throws JWNLException {
 
     for (int i = 1; i <= source.getSenseCount(); i++) {
@@ -85,9 +433,117 @@ final public class CustomDictionary {
     return false;
   }
 
+  /*
+   * the cache of antonym verdicts with the given size and eviction policy,
+   * shared by the rules configured alike.
+   */
+  public static synchronized BoundedCache<Long, Boolean> getAntonymCache(final int size,
+      final BoundedCache.Eviction eviction) {
+
+    final String key = size + ":" + eviction;
+    BoundedCache<Long, Boolean> cache = CustomDictionary.antonymVerdicts.get(key);
+
+    if (cache == null) {
+      cache = new BoundedCache<Long, Boolean>(size, eviction);
+      CustomDictionary.antonymVerdicts.put(key, cache);
+    }
+    return cache;
+  }
+
+  /*
+   * false if the term certainly has no antonym relation to any other term:
+   * it has no sense with an antonym, or it is not in the dictionary at all.
+   */
+  public static boolean mightHaveAntonym(final String term) {
+
+    final DictionarySnapshot dictionarySnapshot = CustomDictionary.getSnapshot();
+
+    if (dictionarySnapshot != null && DictionarySnapshot.canResolve(term)) {
+      return dictionarySnapshot.hasAntonym(term);
+    }
+    return !CustomDictionary.isCertainlyMissing(term);
+  }
+
+  public static boolean mightHaveAntonym(final int termId) {
+    return CustomDictionary.mightHaveAntonym(Terms.name(termId));
+  }
+
+  public static boolean haveAntonyms(final String source, final String target)
+      throws JWNLException {
+    return CustomDictionary.haveAntonyms(source, target, CustomDictionary
+        .getAntonymCache(DEFAULT_ANTONYM_CACHE_SIZE, BoundedCache.Eviction.LRU));
+  }
+
+  public static boolean haveAntonyms(final String source, final String target,
+      final BoundedCache<Long, Boolean> verdicts) throws JWNLException {
+    return CustomDictionary.haveAntonyms(Terms.id(source), Terms.id(target), verdicts);
+  }
+
+  /*
+   * whether two terms have antonym senses, answered from the cache when the
+   * pair (in any order) has already been checked.
+   */
+  public static boolean haveAntonyms(final int sourceId, final int targetId,
+      final BoundedCache<Long, Boolean> verdicts) throws JWNLException {
+
+    final long key = sourceId <= targetId ? (long) sourceId << 32 | targetId
+        : (long) targetId << 32 | sourceId;
+    Boolean verdict = verdicts.get(key);
+
+    if (verdict == null) {
+      final String source = Terms.name(sourceId);
+      final String target = Terms.name(targetId);
+      final DictionarySnapshot dictionarySnapshot = CustomDictionary.getSnapshot();
+
+      if (dictionarySnapshot != null && DictionarySnapshot.canResolve(source)
+          && DictionarySnapshot.canResolve(target)) {
+        verdict = dictionarySnapshot.haveAntonyms(source, target);
+      } else {
+        verdict = CustomDictionary.haveAntonyms(CustomDictionary.stringToIndexWordSet(source),
+            CustomDictionary.stringToIndexWordSet(target));
+      }
+      verdicts.put(key, verdict);
+    }
+    return verdict;
+  }
+
   public static boolean haveAntonyms(final IndexWordSet source, final IndexWordSet target)
       throws JWNLException {
 
+    final WordNetIndex wordNetIndex = CustomDictionary.getIndex();
+
+    if (wordNetIndex == null) {
+      return CustomDictionary.haveAntonymsInDictionary(source, target);
+    }
+
+    final Iterator<?> sourcePos = source.getValidPOSSet().iterator();
+    final Set<?> targetPos = target.getValidPOSSet();
+    IndexWord sourceIndexWord, targetIndexWord;
+    POS currentPos = null;
+
+    while (sourcePos.hasNext()) {
+
+      currentPos = (POS) sourcePos.next();
+
+      if (targetPos.contains(currentPos)) {
+
+        sourceIndexWord = source.getIndexWord(currentPos);
+        targetIndexWord = target.getIndexWord(currentPos);
+
+        if (sourceIndexWord != null && targetIndexWord != null
+            && wordNetIndex.haveAntonyms(sourceIndexWord.getLemma(),
+                targetIndexWord.getLemma(), currentPos.getKey())) {
+          return true;
+        }
+      }
+    }
+
+    return false;
+  }
+
+  private static synchronized boolean haveAntonymsInDictionary(final IndexWordSet source,
+      final IndexWordSet target) throws JWNLException {
+
     final Iterator<?> sourcePos = source.getValidPOSSet().iterator();
     final Set<?> targetPos = target.getValidPOSSet();
     IndexWord sourceIndexWord, targetIndexWord;
@@ -121,8 +577,12 @@ final public class CustomDictionary {
 
   public static IndexWordSet stringToIndexWordSet(final String lemma) throws JWNLException {
 
-    return CustomDictionary.getD().lookupAllIndexWords(lemma);
-
+    if (CustomDictionary.isCertainlyMissing(lemma)) {
+      return new IndexWordSet(lemma);
+    }
+    synchronized (CustomDictionary.class) {
+      return CustomDictionary.getD().lookupAllIndexWords(lemma);
+    }
   }
 
   public static POS taggerToDictionaryPos(final String pos) {
@@ -145,11 +605,22 @@ final public class CustomDictionary {
     }
   }
 
-  public static boolean hasIndexWordForPos(final String lemma, final POS pos) throws JWNLException {
+  public static boolean hasIndexWordForPos(final String lemma, final POS pos)
+      throws JWNLException {
+
+    final DictionarySnapshot dictionarySnapshot = CustomDictionary.getSnapshot();
+
+    if (dictionarySnapshot != null && DictionarySnapshot.canResolve(lemma)) {
+      return dictionarySnapshot.lookup(lemma, pos.getKey()) != null;
+    }
+    if (CustomDictionary.isCertainlyMissing(lemma)) {
+      return false;
+    }
 
     IndexWordSet indexWordSet = null;
-    CustomDictionary.getInstance();
-    indexWordSet = CustomDictionary.getD().lookupAllIndexWords(lemma);
+    synchronized (CustomDictionary.class) {
+      indexWordSet = CustomDictionary.getD().lookupAllIndexWords(lemma);
+    }
 
     return indexWordSet.getIndexWord(pos) != null;
   }
@@ -1,184 +1,500 @@
-
 package utils;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.StringReader;
-import java.util.Iterator;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Properties;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
-import edu.stanford.nlp.ling.CoreAnnotations.PartOfSpeechAnnotation;
-import edu.stanford.nlp.ling.CoreAnnotations.TextAnnotation;
 import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.ling.HasWord;
 import edu.stanford.nlp.ling.SentenceUtils;
+import edu.stanford.nlp.ling.TaggedWord;
+import edu.stanford.nlp.parser.common.ParserQuery;
 import edu.stanford.nlp.parser.lexparser.LexicalizedParser;
-import edu.stanford.nlp.pipeline.StanfordCoreNLP;
 import edu.stanford.nlp.process.CoreLabelTokenFactory;
 import edu.stanford.nlp.process.PTBTokenizer;
 import edu.stanford.nlp.process.TokenizerFactory;
+import edu.stanford.nlp.tagger.maxent.MaxentTagger;
 import edu.stanford.nlp.trees.Tree;
 
 /*
- * class to use the Stanford Parser API in project
+ * class to use the Stanford Parser API in project.
+ *
+ * The class can be used from several threads: the models are loaded once and
+ * shared (the tagger is thread-safe), each thread parses with its own parser
+ * query, and the caches are concurrent.
+ *
+ * An instance tags with one engine and keeps the identifiers it tagged: rules
+ * configured with different engines or cache files get different instances,
+ * see getInstance, and do not see each other's tags.
  */
 public final class CustomParser {
 
-  private static CustomParser cp = null;
-  private static LexicalizedParser lp = null;
-  private static TokenizerFactory<CoreLabel> tokenizerFactory;
-  private static Properties props;
-  private static StanfordCoreNLP pipeline;
+  /*
+   * engines used to tag the terms: the maximum entropy tagger only assigns the
+   * part of speech, the parser builds the full PCFG tree to read them back.
+   */
+  public static final String TAGGER_ENGINE = "tagger";
+  public static final String PARSER_ENGINE = "parser";
+
+  private static final String PARSER_MODEL = "edu/stanford/nlp/models/lexparser/englishPCFG.ser.gz";
+  private static final String TAGGER_MODEL = "edu/stanford/nlp/models/pos-tagger/english-left3words/english-left3words-distsim.tagger";
+
+  /* instances by engine and cache file */
+  private static final Map<String, CustomParser> instances = new HashMap<String, CustomParser>();
+  private static volatile LexicalizedParser lp = null;
+  private static volatile MaxentTagger tagger = null;
+  private static volatile TokenizerFactory<CoreLabel> tokenizerFactory;
+
+  /*
+   * a parser query holds the charts of a parse, so each thread keeps its own.
+   */
+  private static final ThreadLocal<ParserQuery> parserQueries = new ThreadLocal<ParserQuery>() {
+    @Override
+    protected ParserQuery initialValue() {
+      return CustomParser.lp.parserQuery();
+    }
+  };
+
+  /*
+   * time spent and heap retained when loading each model, -1 until loaded.
+   */
+  private static long parserLoadMillis = -1;
+  private static long parserLoadBytes = -1;
+  private static long taggerLoadMillis = -1;
+  private static long taggerLoadBytes = -1;
+
+  /*
+   * identifiers already tagged, keyed by their sequence of terms. The cache
+   * stops growing once MAX_TAGGED_IDENTIFIERS distinct sequences are stored.
+   */
+  private static final int MAX_TAGGED_IDENTIFIERS = 200000;
+  private static final AtomicLong cacheHits = new AtomicLong();
+  private static final AtomicLong cacheMisses = new AtomicLong();
+  private static final AtomicLong batches = new AtomicLong();
+
+  /*
+   * tagged identifiers stored on disk by previous runs, by path. A file holds
+   * the tags of a single engine: the first one opening it.
+   */
+  private static final Map<String, PersistentTagCache> persistentCaches = new HashMap<String, PersistentTagCache>();
+  private static final Map<String, String> persistentCacheEngines = new HashMap<String, String>();
+  private static final AtomicLong persistentCacheHits = new AtomicLong();
+
+  private final String engine;
+  private final Map<String, TaggedIdentifier> taggedIdentifiers = new ConcurrentHashMap<String, TaggedIdentifier>();
+  private final PersistentTagCache persistentCache;
+
+  /*
+   * the instance tagging with the given engine, either TAGGER_ENGINE or
+   * PARSER_ENGINE (unknown values fall back to the tagger), that reads and
+   * stores the tagged identifiers in the given file so that they can be reused
+   * by the next runs. The file is discarded when the engine or its model
+   * changes. An empty path disables the persistent cache.
+   */
+  public static synchronized CustomParser getInstance(final String engine, final String path) {
+
+    final String selected = PARSER_ENGINE.equalsIgnoreCase(engine) ? PARSER_ENGINE
+        : TAGGER_ENGINE;
+    final String cachePath = path == null ? "" : path;
+    final String key = selected + "#" + cachePath;
+    CustomParser instance = CustomParser.instances.get(key);
+
+    if (instance == null) {
+      instance = new CustomParser(selected, CustomParser.openPersistentCache(cachePath, selected));
+      CustomParser.instances.put(key, instance);
+    }
+    return instance;
+  }
+
+  /*
+   * models are not loaded here but on the first identifier to tag, see
+   * loadEngine.
+   */
+  private CustomParser(final String engine, final PersistentTagCache persistentCache) {
+    this.engine = engine;
+    this.persistentCache = persistentCache;
+  }
+
+  /*
+   * the cache stored in the file for the engine, null if there is none or if
+   * the file already holds the tags of another engine.
+   */
+  private static PersistentTagCache openPersistentCache(final String path, final String engine) {
 
-  public static CustomParser getInstance() {
-    if (CustomParser.cp == null) {
-      CustomParser.cp = new CustomParser();
+    if (path.isEmpty()) {
+      return null;
     }
-    return CustomParser.cp;
+    if (CustomParser.persistentCacheEngines.containsKey(path)) {
+      return engine.equals(CustomParser.persistentCacheEngines.get(path))
+          ? CustomParser.persistentCaches.get(path)
+          : null;
+    }
+    CustomParser.persistentCacheEngines.put(path, engine);
+
+    final String model = PARSER_ENGINE.equals(engine) ? PARSER_MODEL : TAGGER_MODEL;
+    final long fingerprint = PersistentTagCache.fingerprint(engine, model,
+        CustomParser.getResourceStamp(model));
+    try {
+      CustomParser.persistentCaches.put(path, PersistentTagCache.open(new File(path), fingerprint));
+    } catch (final IOException e) {
+      e.printStackTrace();
+    }
+    return CustomParser.persistentCaches.get(path);
+  }
+
+  public String getEngine() {
+    return this.engine;
   }
 
-  private CustomParser() {
+  /*
+   * writes the identifiers tagged since the last flush to their files.
+   */
+  public static void flushPersistentCaches() {
 
-    CustomParser.lp = LexicalizedParser
-        .loadModel("edu/stanford/nlp/models/lexparser/englishPCFG.ser.gz");
-    CustomParser.tokenizerFactory = PTBTokenizer.factory(new CoreLabelTokenFactory(), "");
-    CustomParser.props = new Properties();
-    CustomParser.props.put("annotators", "tokenize, ssplit, pos, lemma");
-    CustomParser.pipeline = new StanfordCoreNLP(CustomParser.props);
+    final List<PersistentTagCache> caches;
 
+    synchronized (CustomParser.class) {
+      caches = new ArrayList<PersistentTagCache>(CustomParser.persistentCaches.values());
+    }
+    for (final PersistentTagCache cache : caches) {
+      try {
+        cache.flush();
+      } catch (final IOException e) {
+        e.printStackTrace();
+      }
+    }
+  }
+
+  /*
+   * identifies the version of a model file without loading it: its location,
+   * size and modification date.
+   */
+  private static String getResourceStamp(final String resource) {
+
+    final URL url = CustomParser.class.getClassLoader().getResource(resource);
+
+    if (url == null) {
+      return resource;
+    }
+    try {
+      final URLConnection connection = url.openConnection();
+      connection.setUseCaches(false);
+      return url + ":" + connection.getContentLengthLong() + ":" + connection.getLastModified();
+    } catch (final IOException e) {
+      return url.toString();
+    }
+  }
+
+  private static void loadEngine(final String engine) {
+
+    if (PARSER_ENGINE.equals(engine) ? CustomParser.lp != null : CustomParser.tagger != null) {
+      return;
+    }
+    synchronized (CustomParser.class) {
+      CustomParser.loadModel(engine);
+    }
+  }
+
+  private static void loadModel(final String engine) {
+
+    if (PARSER_ENGINE.equals(engine)) {
+      if (CustomParser.lp == null) {
+        final long start = System.currentTimeMillis();
+        final long used = CustomParser.usedMemory();
+
+        CustomParser.lp = LexicalizedParser.loadModel(PARSER_MODEL);
+        CustomParser.parserLoadMillis = System.currentTimeMillis() - start;
+        CustomParser.parserLoadBytes = CustomParser.usedMemory() - used;
+      }
+    } else if (CustomParser.tagger == null) {
+      final long start = System.currentTimeMillis();
+      final long used = CustomParser.usedMemory();
+
+      CustomParser.tagger = new MaxentTagger(TAGGER_MODEL);
+      CustomParser.taggerLoadMillis = System.currentTimeMillis() - start;
+      CustomParser.taggerLoadBytes = CustomParser.usedMemory() - used;
+    }
+  }
+
+  private static long usedMemory() {
+
+    final Runtime runtime = Runtime.getRuntime();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  public static boolean isParserLoaded() {
+    return CustomParser.lp != null;
+  }
+
+  public static boolean isTaggerLoaded() {
+    return CustomParser.tagger != null;
+  }
+
+  public static long getParserLoadMillis() {
+    return CustomParser.parserLoadMillis;
+  }
+
+  /*
+   * approximation of the heap retained by the model: the growth of the used
+   * heap while loading it.
+   */
+  public static long getParserLoadBytes() {
+    return CustomParser.parserLoadBytes;
+  }
+
+  public static long getTaggerLoadMillis() {
+    return CustomParser.taggerLoadMillis;
+  }
+
+  public static long getTaggerLoadBytes() {
+    return CustomParser.taggerLoadBytes;
   }
 
   public static Tree getTree(final String sentence) {
 
-    final List<CoreLabel> tokens = CustomParser.tokenizerFactory
-        .getTokenizer(new StringReader(sentence)).tokenize();
+    final List<CoreLabel> tokens = CustomParser.tokenize(sentence);
 
+    CustomParser.loadEngine(PARSER_ENGINE);
     return CustomParser.lp.apply(tokens);
   }
 
   public static Tree getTree(final Vector<String> sentence) {
 
-    final String[] sentenceArray = sentence.toArray(new String[sentence.size()]);
+    CustomParser.loadEngine(PARSER_ENGINE);
+    return CustomParser.lp.apply(CustomParser.toTokens(sentence));
+  }
 
-    final List<CoreLabel> tokens = SentenceUtils.toCoreLabelList(sentenceArray);
-    return CustomParser.lp.apply(tokens);
+  private static List<CoreLabel> tokenize(final String sentence) {
+
+    TokenizerFactory<CoreLabel> factory = CustomParser.tokenizerFactory;
+
+    if (factory == null) {
+      factory = PTBTokenizer.factory(new CoreLabelTokenFactory(), "");
+      CustomParser.tokenizerFactory = factory;
+    }
+    return factory.getTokenizer(new StringReader(sentence)).tokenize();
   }
 
-  public static boolean hasPOS(final String pos, final String sentence) {
+  private static List<CoreLabel> toTokens(final Vector<String> sentence) {
 
-    final Tree tree = CustomParser.getTree(sentence);
-    final List<CoreLabel> taggedWords = tree.taggedLabeledYield();
-    final Iterator<CoreLabel> taggedWord = taggedWords.iterator();
-    CoreLabel next = null;
+    final String[] sentenceArray = sentence.toArray(new String[sentence.size()]);
+
+    return SentenceUtils.toCoreLabelList(sentenceArray);
+  }
+
+  /*
+   * tags the tokens with the selected engine. Both engines return the same tag
+   * set (Penn Treebank), so the detectors do not depend on the choice.
+   */
+  private List<TaggedWord> tagTokens(final List<? extends HasWord> tokens) {
 
-    while (taggedWord.hasNext()) {
-      next = taggedWord.next();
-      final String taggedPOS = next.get(PartOfSpeechAnnotation.class).toString();
+    CustomParser.loadEngine(this.engine);
+    if (PARSER_ENGINE.equals(this.engine)) {
+      final ParserQuery query = CustomParser.parserQueries.get();
 
-      if (taggedPOS.equalsIgnoreCase(pos)) {
-        return true;
+      if (query.parse(tokens)) {
+        return query.getBestParse().taggedYield();
       }
+      /* let the parser build its fallback tree */
+      return CustomParser.lp.apply(tokens).taggedYield();
     }
-    return false;
+    return CustomParser.tagger.tagSentence(tokens);
   }
 
-  public static boolean hasPOS(final String pos, final Vector<String> sentence) {
+  private static TaggedIdentifier toTaggedIdentifier(final List<TaggedWord> taggedWords) {
+
+    final String[] tokens = new String[taggedWords.size()];
+    final String[] tags = new String[taggedWords.size()];
+
+    for (int i = 0; i < tokens.length; i++) {
+      tokens[i] = taggedWords.get(i).word();
+      tags[i] = taggedWords.get(i).tag();
+    }
+    return new TaggedIdentifier(tokens, tags);
+  }
+
+  public TaggedIdentifier tag(final String sentence) {
+
+    return CustomParser.toTaggedIdentifier(this.tagTokens(CustomParser.tokenize(sentence)));
+  }
+
+  /*
+   * tags a sequence of terms, reusing the result of a previous call for the
+   * same sequence.
+   */
+  public TaggedIdentifier tag(final Vector<String> sentence) {
+
+    final String key = Splitter.toString(sentence);
+    TaggedIdentifier tagged = this.taggedIdentifiers.get(key);
 
-    final Tree tree = CustomParser.getTree(sentence);
-    final List<CoreLabel> taggedWords = tree.taggedLabeledYield();
-    final Iterator<CoreLabel> taggedWord = taggedWords.iterator();
-    CoreLabel next = null;
+    if (tagged != null) {
+      CustomParser.cacheHits.incrementAndGet();
+      return tagged;
+    }
+    CustomParser.cacheMisses.incrementAndGet();
 
-    while (taggedWord.hasNext()) {
-      next = taggedWord.next();
-      final String taggedPOS = next.get(PartOfSpeechAnnotation.class).toString();
+    final PersistentTagCache persistent = this.persistentCache;
+    tagged = persistent != null ? persistent.get(key) : null;
 
-      if (taggedPOS.equalsIgnoreCase(pos)) {
-        return true;
+    if (tagged != null) {
+      CustomParser.persistentCacheHits.incrementAndGet();
+    } else {
+      tagged = CustomParser.toTaggedIdentifier(this.tagTokens(CustomParser.toTokens(sentence)));
+      if (persistent != null) {
+        persistent.put(key, tagged);
       }
     }
-    return false;
+    this.cache(key, tagged);
+    return tagged;
   }
 
-  public static boolean hasPOSInAnyForm(final String pos, final String sentence) {
+  private void cache(final String key, final TaggedIdentifier tagged) {
+
+    if (this.taggedIdentifiers.size() < MAX_TAGGED_IDENTIFIERS) {
+      this.taggedIdentifiers.put(key, tagged);
+    }
+  }
 
-    final Iterator<CoreLabel> taggedWord = CustomParser.getTree(sentence).taggedLabeledYield()
-        .iterator();
-    CoreLabel next = null;
+  /*
+   * tags the sequences that are not cached yet with one call to the engine per
+   * batch of at most batchSize sequences, so that the following calls to
+   * tag(Vector) find them in the cache.
+   */
+  public void tagAll(final List<Vector<String>> sentences, final int batchSize) {
 
-    while (taggedWord.hasNext()) {
-      next = taggedWord.next();
+    final PersistentTagCache persistent = this.persistentCache;
+    final Map<String, Vector<String>> missing = new LinkedHashMap<String, Vector<String>>();
+
+    for (final Vector<String> sentence : sentences) {
+
+      if (sentence.isEmpty()) {
+        continue;
+      }
+      final String key = Splitter.toString(sentence);
 
-      if (next.get(PartOfSpeechAnnotation.class).startsWith(pos)) {
-        return true;
+      if (this.taggedIdentifiers.containsKey(key) || missing.containsKey(key)) {
+        continue;
+      }
+      final TaggedIdentifier stored = persistent != null ? persistent.get(key) : null;
+
+      if (stored != null) {
+        CustomParser.persistentCacheHits.incrementAndGet();
+        this.cache(key, stored);
+      } else {
+        missing.put(key, sentence);
       }
     }
-    return false;
-  }
 
-  public static boolean hasPOSInAnyForm(final String pos, final Vector<String> sentence) {
+    final List<String> keys = new ArrayList<String>(missing.keySet());
+    final int size = Math.max(1, batchSize);
 
-    final Iterator<CoreLabel> taggedWord = CustomParser.getTree(sentence).taggedLabeledYield()
-        .iterator();
-    CoreLabel next = null;
+    for (int start = 0; start < keys.size(); start += size) {
+
+      final List<String> batchKeys = keys.subList(start, Math.min(keys.size(), start + size));
+      final List<List<CoreLabel>> batch = new ArrayList<List<CoreLabel>>(batchKeys.size());
+
+      for (final String key : batchKeys) {
+        batch.add(CustomParser.toTokens(missing.get(key)));
+      }
+      final List<List<TaggedWord>> taggedBatch = this.tagBatch(batch);
 
-    while (taggedWord.hasNext()) {
-      next = taggedWord.next();
+      for (int i = 0; i < batchKeys.size(); i++) {
+        final TaggedIdentifier tagged = CustomParser.toTaggedIdentifier(taggedBatch.get(i));
 
-      if (next.get(PartOfSpeechAnnotation.class).startsWith(pos)) {
-        return true;
+        if (persistent != null) {
+          persistent.put(batchKeys.get(i), tagged);
+        }
+        this.cache(batchKeys.get(i), tagged);
       }
+      CustomParser.cacheMisses.addAndGet(batchKeys.size());
+      CustomParser.batches.incrementAndGet();
     }
-    return false;
   }
 
-  public static String getAllPOS(final String sentence) {
+  private List<List<TaggedWord>> tagBatch(final List<List<CoreLabel>> batch) {
 
-    final Tree tree = CustomParser.getTree(sentence);
-    List<CoreLabel> taggedWords = tree.taggedLabeledYield();
+    CustomParser.loadEngine(this.engine);
+    if (PARSER_ENGINE.equals(this.engine)) {
+      final List<List<TaggedWord>> result = new ArrayList<List<TaggedWord>>(batch.size());
 
-    String result = "";
-    for (final CoreLabel taggedWord : taggedWords) {
-      result = result + taggedWord.toString() + " ";
+      for (final Tree tree : CustomParser.lp.parseMultiple(batch)) {
+        result.add(tree.taggedYield());
+      }
+      return result;
     }
-    result = result.substring(0, result.length() - 1);
-    return result;
+    return CustomParser.tagger.process(batch);
+  }
 
+  public static long getCacheHits() {
+    return CustomParser.cacheHits.get();
   }
 
-  public static String getPOS(final String term, final String sentence) {
+  public static long getCacheMisses() {
+    return CustomParser.cacheMisses.get();
+  }
 
-    final Tree tree = CustomParser.getTree(sentence);
-    final List<CoreLabel> taggedWords = tree.taggedLabeledYield();
-    final Iterator<CoreLabel> taggedWord = taggedWords.iterator();
-    CoreLabel next = null;
+  /*
+   * number of batches sent to the engine by tagAll.
+   */
+  public static long getBatches() {
+    return CustomParser.batches.get();
+  }
 
-    while (taggedWord.hasNext()) {
-      next = taggedWord.next();
-      final String word = next.get(TextAnnotation.class);
+  /*
+   * number of cache misses answered by the persistent cache.
+   */
+  public static long getPersistentCacheHits() {
+    return CustomParser.persistentCacheHits.get();
+  }
 
-      if (word.compareTo(term) == 0) {
-        return next.get(PartOfSpeechAnnotation.class);
-      }
-    }
-    return null;
+  public boolean hasPOS(final String pos, final String sentence) {
+
+    return this.tag(sentence).hasPOS(pos);
   }
 
-  public static String getPOS(final String term, final Vector<String> sentence) {
+  public boolean hasPOS(final String pos, final Vector<String> sentence) {
 
-    final Tree tree = CustomParser.getTree(sentence);
-    final List<CoreLabel> taggedWords = tree.taggedLabeledYield();
-    final Iterator<CoreLabel> taggedWord = taggedWords.iterator();
-    CoreLabel next = null;
+    return this.tag(sentence).hasPOS(pos);
+  }
 
-    while (taggedWord.hasNext()) {
-      next = taggedWord.next();
-      final String word = next.get(TextAnnotation.class);
+  public boolean hasPOSInAnyForm(final String pos, final String sentence) {
 
-      if (word.compareTo(term) == 0) {
-        return next.get(PartOfSpeechAnnotation.class);
-      }
-    }
-    return null;
+    return this.tag(sentence).hasPOSInAnyForm(pos);
+  }
+
+  public boolean hasPOSInAnyForm(final String pos, final Vector<String> sentence) {
+
+    return this.tag(sentence).hasPOSInAnyForm(pos);
+  }
+
+  public String getAllPOS(final String sentence) {
+
+    return this.tag(sentence).getAllPOS();
+  }
+
+  public String getAllPOS(final Vector<String> sentence) {
+
+    return this.tag(sentence).getAllPOS();
+  }
+
+  public String getPOS(final String term, final String sentence) {
+
+    return this.tag(sentence).getPOS(term);
+  }
+
+  public String getPOS(final String term, final Vector<String> sentence) {
+
+    return this.tag(sentence).getPOS(term);
   }
 
 }
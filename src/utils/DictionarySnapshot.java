@@ -0,0 +1,287 @@
+package utils;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+
+/*
+ * the parts of WordNet used by LAPD, compiled by DictionarySnapshotCompiler
+ * into a single binary file: the WordNetIndex (lemmas, senses per part of
+ * speech, antonym and similar-to pointers) and the exception lists. Together
+ * with the suffix rules of file_properties.xml it resolves a word to its base
+ * lemma the way the JWNL morphological processor does, so that the dictionary
+ * questions of the rules are answered without initializing JWNL.
+ *
+ * Compounds (words with spaces, '_' or '-') go through the tokenizer operation
+ * of JWNL and are not resolved here.
+ */
+public final class DictionarySnapshot {
+
+  public static final String FILE_NAME = "lapd.snapshot";
+
+  private static final int MAGIC = 0x4c415053; // "LAPS"
+  private static final int VERSION = 1;
+
+  /* DetachSuffixesOperation rules of file_properties.xml, per part of speech */
+  static final String[][][] SUFFIX_RULES = {
+      { { "s", "" }, { "ses", "s" }, { "xes", "x" }, { "zes", "z" }, { "ches", "ch" },
+          { "shes", "sh" }, { "men", "man" }, { "ies", "y" } },
+      { { "s", "" }, { "ies", "y" }, { "es", "e" }, { "es", "" }, { "ed", "e" }, { "ed", "" },
+          { "ing", "e" }, { "ing", "" } },
+      { { "er", "" }, { "est", "" }, { "er", "e" }, { "est", "e" } }, {} };
+
+  private final WordNetIndex index;
+  /* base forms of the irregular inflections, per part of speech */
+  private final Map<String, String[]>[] exceptions;
+
+  private DictionarySnapshot(final WordNetIndex index, final Map<String, String[]>[] exceptions) {
+    this.index = index;
+    this.exceptions = exceptions;
+  }
+
+  public WordNetIndex getIndex() {
+    return this.index;
+  }
+
+  /*
+   * false for the words this snapshot cannot resolve on its own.
+   */
+  public static boolean canResolve(final String word) {
+    return !word.isEmpty() && word.indexOf(' ') < 0 && word.indexOf('_') < 0
+        && word.indexOf('-') < 0;
+  }
+
+  /*
+   * the lemma of the index word JWNL would return for the word in the given
+   * part of speech, or null if there is none: the word itself, then the bases
+   * of its exceptions, then the bases obtained by detaching suffixes.
+   */
+  public String lookup(final String word, final String posKey) {
+
+    final int pos = WordNetIndex.posIndex(posKey);
+    final String query = word.trim().toLowerCase();
+
+    if (pos < 0) {
+      return null;
+    }
+    if (this.index.hasLemma(query, posKey)) {
+      return query;
+    }
+    String base = this.lookupException(query, pos);
+    if (base != null) {
+      return base;
+    }
+    for (final String[] rule : SUFFIX_RULES[pos]) {
+      if (query.endsWith(rule[0]) && query.length() > rule[0].length()) {
+        final String detached = query.substring(0, query.length() - rule[0].length()) + rule[1];
+        if (this.index.hasLemma(detached, posKey)) {
+          return detached;
+        }
+        base = this.lookupException(detached, pos);
+        if (base != null) {
+          return base;
+        }
+      }
+    }
+    return null;
+  }
+
+  private String lookupException(final String word, final int pos) {
+
+    final String[] bases = this.exceptions[pos].get(word);
+
+    if (bases != null) {
+      for (final String base : bases) {
+        if (this.index.hasLemma(base, WordNetIndex.POS_KEYS[pos])) {
+          return base;
+        }
+      }
+    }
+    return null;
+  }
+
+  /*
+   * true if a sense of the word, in some part of speech, has an antonym: a
+   * word without one has no antonym relation to any other.
+   */
+  public boolean hasAntonym(final String word) {
+
+    for (final String posKey : WordNetIndex.POS_KEYS) {
+      final String lemma = this.lookup(word, posKey);
+
+      if (lemma != null && this.index.hasAntonym(lemma, posKey)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /*
+   * same verdict as CustomDictionary.haveAntonyms for the index word sets of
+   * the two words.
+   */
+  public boolean haveAntonyms(final String source, final String target) {
+
+    for (final String posKey : WordNetIndex.POS_KEYS) {
+      final String sourceLemma = this.lookup(source, posKey);
+      final String targetLemma = sourceLemma == null ? null : this.lookup(target, posKey);
+
+      if (targetLemma != null && this.index.haveAntonyms(sourceLemma, targetLemma, posKey)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /*
+   * reads the index.*, data.* and *.exc files found in the directory.
+   */
+  public static DictionarySnapshot compile(final File directory) throws IOException {
+
+    final Map<String, String[]>[] exceptions = DictionarySnapshot.newExceptions();
+
+    for (int pos = 0; pos < WordNetIndex.POS_FILES.length; pos++) {
+      final File file = new File(directory, WordNetIndex.POS_FILES[pos] + ".exc");
+      if (file.isFile()) {
+        DictionarySnapshot.readExceptions(file, exceptions[pos]);
+      }
+    }
+    return new DictionarySnapshot(WordNetIndex.build(directory), exceptions);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, String[]>[] newExceptions() {
+
+    final Map<String, String[]>[] exceptions = new Map[WordNetIndex.POS_KEYS.length];
+    for (int pos = 0; pos < exceptions.length; pos++) {
+      exceptions[pos] = new HashMap<String, String[]>();
+    }
+    return exceptions;
+  }
+
+  /*
+   * inflected_form base_form+
+   */
+  private static void readExceptions(final File file, final Map<String, String[]> exceptions)
+      throws IOException {
+
+    try (BufferedReader reader = WordNetIndex.open(file)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (WordNetIndex.isHeader(line)) {
+          continue;
+        }
+        final StringTokenizer tokens = new StringTokenizer(line, " ");
+        final String inflected = tokens.nextToken().replace('_', ' ');
+        final List<String> bases = new ArrayList<String>();
+
+        while (tokens.hasMoreTokens()) {
+          bases.add(tokens.nextToken().replace('_', ' '));
+        }
+        exceptions.put(inflected, bases.toArray(new String[bases.size()]));
+      }
+    }
+  }
+
+  /*
+   * true if the snapshot file exists and is newer than the files of the
+   * dictionary directory.
+   */
+  public static boolean isUpToDate(final File snapshot, final File directory) {
+
+    if (!snapshot.isFile()) {
+      return false;
+    }
+
+    final File[] files = directory.listFiles();
+
+    if (files != null) {
+      for (final File file : files) {
+        if (!file.getName().equals(FILE_NAME) && file.lastModified() > snapshot.lastModified()) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /*
+   * writes a temporary file next to the target and renames it, so that a
+   * reader never sees a partial snapshot.
+   */
+  public void write(final File file) throws IOException {
+
+    final File temporary = new File(file.getAbsoluteFile().getParentFile(),
+        file.getName() + ".tmp" + Long.toHexString(System.nanoTime()));
+
+    try {
+      this.writeTo(temporary);
+      Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      temporary.delete();
+    }
+  }
+
+  private void writeTo(final File file) throws IOException {
+
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(file)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      this.index.write(out);
+
+      for (final Map<String, String[]> posExceptions : this.exceptions) {
+        out.writeInt(posExceptions.size());
+        for (final Map.Entry<String, String[]> entry : posExceptions.entrySet()) {
+          WordNetIndex.writeString(out, entry.getKey());
+          out.writeShort(entry.getValue().length);
+          for (final String base : entry.getValue()) {
+            WordNetIndex.writeString(out, base);
+          }
+        }
+      }
+    }
+  }
+
+  /*
+   * loads a snapshot with a single read of the file; null if the file was
+   * written by another version of the compiler.
+   */
+  public static DictionarySnapshot read(final File file) throws IOException {
+
+    final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+
+    if (buffer.remaining() < 8 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+      return null;
+    }
+
+    final WordNetIndex index = WordNetIndex.read(buffer);
+    final Map<String, String[]>[] exceptions = DictionarySnapshot.newExceptions();
+
+    for (final Map<String, String[]> posExceptions : exceptions) {
+      final int count = buffer.getInt();
+      for (int i = 0; i < count; i++) {
+        final String inflected = WordNetIndex.readString(buffer);
+        final String[] bases = new String[buffer.getShort() & 0xffff];
+        for (int j = 0; j < bases.length; j++) {
+          bases[j] = WordNetIndex.readString(buffer);
+        }
+        posExceptions.put(inflected, bases);
+      }
+    }
+    return new DictionarySnapshot(index, exceptions);
+  }
+
+}
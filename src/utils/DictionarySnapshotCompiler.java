@@ -0,0 +1,41 @@
+package utils;
+
+import java.io.File;
+import java.io.IOException;
+
+/*
+ * compiles the WordNet files of a dictionary directory into the snapshot
+ * loaded by CustomDictionary:
+ *
+ * java utils.DictionarySnapshotCompiler src/utils/dict [output file]
+ *
+ * The snapshot is written in the dictionary directory by default. The first
+ * run of the rules compiles it when it is missing; this tool ships it ahead,
+ * for instance in a read-only install.
+ */
+public final class DictionarySnapshotCompiler {
+
+  private DictionarySnapshotCompiler() {
+  }
+
+  public static void main(final String[] args) throws IOException {
+
+    if (args.length < 1 || args.length > 2) {
+      System.err.println(
+          "usage: java utils.DictionarySnapshotCompiler <dictionary directory> [output file]");
+      System.exit(1);
+    }
+
+    final File directory = new File(args[0]);
+    final File output = args.length > 1 ? new File(args[1])
+        : new File(directory, DictionarySnapshot.FILE_NAME);
+    final long start = System.currentTimeMillis();
+    final DictionarySnapshot snapshot = DictionarySnapshot.compile(directory);
+
+    snapshot.write(output);
+    System.out.println("wrote " + output + " (" + snapshot.getIndex().getLemmaCount()
+        + " lemmas, " + snapshot.getIndex().getSynsetCount() + " synsets, " + output.length()
+        + " bytes) in " + (System.currentTimeMillis() - start) + " ms");
+  }
+
+}
@@ -0,0 +1,165 @@
+package utils;
+
+import java.util.Arrays;
+
+/*
+ * splits an identifier into its terms in a single pass, without regular
+ * expressions: a term starts at an upper case letter following a lower case
+ * letter or a digit, at the last upper case letter of an acronym followed by a
+ * lower case letter (XMLParser is xml parser, but URLs is urls) and, if asked,
+ * after an underscore. Digits stay in the term they follow (md5Hash is md5
+ * hash), and any upper case letter, not only an ASCII one, may start a term.
+ *
+ * The terms are kept as offsets into the scanned sequence; an instance is
+ * reused from one identifier to the next and only allocates when a term is
+ * asked for as a String.
+ */
+public final class IdentifierScanner {
+
+  private CharSequence source = "";
+  private int[] starts = new int[8];
+  private int[] ends = new int[8];
+  private int size = 0;
+
+  public IdentifierScanner scan(final CharSequence identifier, final boolean splitUnderscores) {
+    return this.scan(identifier, 0, identifier.length(), splitUnderscores);
+  }
+
+  /*
+   * scans the characters of identifier in [from, to).
+   */
+  public IdentifierScanner scan(final CharSequence identifier, final int from, final int to,
+      final boolean splitUnderscores) {
+
+    this.source = identifier;
+    this.size = 0;
+    int start = -1;
+
+    for (int i = from; i < to; i++) {
+      final char c = identifier.charAt(i);
+
+      if (c == '_' && splitUnderscores) {
+        if (start >= 0) {
+          this.add(start, i);
+          start = -1;
+        }
+      } else if (start < 0) {
+        start = i;
+      } else if (Character.isUpperCase(c)) {
+        final char previous = identifier.charAt(i - 1);
+
+        if (!Character.isUpperCase(previous)
+            || i + 1 < to && Character.isLowerCase(identifier.charAt(i + 1))
+                && !IdentifierScanner.isPluralAcronym(identifier, i + 1, to)) {
+          this.add(start, i);
+          start = i;
+        }
+      }
+    }
+    if (start >= 0) {
+      this.add(start, to);
+    }
+    return this;
+  }
+
+  /*
+   * a lone 's' ends a plural acronym (URLs) rather than starting a term.
+   */
+  private static boolean isPluralAcronym(final CharSequence identifier, final int index,
+      final int to) {
+    return identifier.charAt(index) == 's'
+        && (index + 1 == to || !Character.isLowerCase(identifier.charAt(index + 1)));
+  }
+
+  private void add(final int start, final int end) {
+
+    if (this.size == this.starts.length) {
+      this.starts = Arrays.copyOf(this.starts, this.size * 2);
+      this.ends = Arrays.copyOf(this.ends, this.size * 2);
+    }
+    this.starts[this.size] = start;
+    this.ends[this.size] = end;
+    this.size++;
+  }
+
+  public int size() {
+    return this.size;
+  }
+
+  public int start(final int index) {
+    return this.starts[index];
+  }
+
+  public int end(final int index) {
+    return this.ends[index];
+  }
+
+  public int length(final int index) {
+    return this.ends[index] - this.starts[index];
+  }
+
+  /*
+   * the character at offset in the scanned sequence, lower cased.
+   */
+  public char lowerCaseChar(final int offset) {
+    return Character.toLowerCase(this.source.charAt(offset));
+  }
+
+  /*
+   * the term at index, lower cased.
+   */
+  public String term(final int index) {
+
+    final char[] chars = new char[this.length(index)];
+    for (int i = 0; i < chars.length; i++) {
+      chars[i] = this.lowerCaseChar(this.starts[index] + i);
+    }
+    return new String(chars);
+  }
+
+  /*
+   * the interned id of the term at index.
+   */
+  public int termId(final int index) {
+    return Terms.id(this, index);
+  }
+
+  /*
+   * true if the term at index is word, ignoring case.
+   */
+  public boolean termEquals(final int index, final String word) {
+    return this.length(index) == word.length() && this.regionMatches(this.starts[index], word);
+  }
+
+  /*
+   * true if word occurs in the term at index, ignoring case.
+   */
+  public boolean termContains(final int index, final String word) {
+
+    for (int i = this.starts[index]; i + word.length() <= this.ends[index]; i++) {
+      if (this.regionMatches(i, word)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public boolean termEndsWith(final int index, final char c) {
+    return this.length(index) > 0
+        && Character.toLowerCase(this.source.charAt(this.ends[index] - 1)) == c;
+  }
+
+  private boolean regionMatches(final int offset, final String word) {
+
+    for (int i = 0; i < word.length(); i++) {
+      final char a = this.source.charAt(offset + i);
+      final char b = word.charAt(i);
+
+      if (a != b && Character.toLowerCase(a) != Character.toLowerCase(b)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+}
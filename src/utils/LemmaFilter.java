@@ -0,0 +1,148 @@
+package utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+
+/*
+ * Bloom filter of the words JWNL can find, built from the lemmas of the
+ * index.* files and the inflected forms of the *.exc files. A word is absent
+ * if neither it nor any base form produced by the suffix rules of
+ * file_properties.xml is in the filter; such a word has no index word and can
+ * be answered without going through the morphological processor. False
+ * positives only cost a regular lookup.
+ */
+public final class LemmaFilter {
+
+  private static final int BITS_PER_ENTRY = 10;
+  private static final int HASHES = 7;
+
+  private final long[] bits;
+  private final int mask;
+  private final int entries;
+
+  private LemmaFilter(final int entries) {
+
+    int size = 64;
+    while (size < (long) entries * BITS_PER_ENTRY) {
+      size <<= 1;
+    }
+    this.bits = new long[size >>> 6];
+    this.mask = size - 1;
+    this.entries = entries;
+  }
+
+  public int getEntryCount() {
+    return this.entries;
+  }
+
+  /*
+   * the same normalization for the words of the files and the queries.
+   */
+  private static String normalize(final String word) {
+    return word.trim().toLowerCase().replace(' ', '_');
+  }
+
+  private static int secondHash(final String word) {
+
+    int hash = 0x811c9dc5;
+    for (int i = 0; i < word.length(); i++) {
+      hash ^= word.charAt(i);
+      hash *= 0x01000193;
+    }
+    return hash | 1;
+  }
+
+  private void add(final String word) {
+
+    final int first = word.hashCode();
+    final int second = LemmaFilter.secondHash(word);
+
+    for (int i = 0; i < HASHES; i++) {
+      final int bit = (first + i * second) & this.mask;
+      this.bits[bit >>> 6] |= 1L << bit;
+    }
+  }
+
+  private boolean contains(final String word) {
+
+    final int first = word.hashCode();
+    final int second = LemmaFilter.secondHash(word);
+
+    for (int i = 0; i < HASHES; i++) {
+      final int bit = (first + i * second) & this.mask;
+      if ((this.bits[bit >>> 6] & 1L << bit) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /*
+   * false if the dictionary certainly has no index word for the word, in any
+   * part of speech.
+   */
+  public boolean mightContain(final String word) {
+
+    final String query = LemmaFilter.normalize(word);
+
+    /* compounds go through the tokenizer operation */
+    if (query.isEmpty() || query.indexOf('_') >= 0 || query.indexOf('-') >= 0) {
+      return true;
+    }
+    if (this.contains(query)) {
+      return true;
+    }
+    for (final String[][] posRules : DictionarySnapshot.SUFFIX_RULES) {
+      for (final String[] rule : posRules) {
+        if (query.endsWith(rule[0]) && query.length() > rule[0].length()
+            && this.contains(query.substring(0, query.length() - rule[0].length()) + rule[1])) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /*
+   * reads the index.* and *.exc files found in the directory.
+   */
+  public static LemmaFilter build(final File directory) throws IOException {
+
+    final List<String> words = new ArrayList<String>();
+
+    for (final String pos : WordNetIndex.POS_FILES) {
+      final File index = new File(directory, "index." + pos);
+      if (index.isFile()) {
+        LemmaFilter.readFirstWords(index, words);
+      }
+      final File exceptions = new File(directory, pos + ".exc");
+      if (exceptions.isFile()) {
+        LemmaFilter.readFirstWords(exceptions, words);
+      }
+    }
+
+    final LemmaFilter filter = new LemmaFilter(words.size());
+    for (final String word : words) {
+      filter.add(LemmaFilter.normalize(word));
+    }
+    return filter;
+  }
+
+  private static void readFirstWords(final File file, final List<String> words)
+      throws IOException {
+
+    try (BufferedReader reader = WordNetIndex.open(file)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (!WordNetIndex.isHeader(line)) {
+          words.add(new StringTokenizer(line, " ").nextToken());
+        }
+      }
+    }
+  }
+
+}
@@ -0,0 +1,194 @@
+package utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import net.didion.jwnl.JWNLRuntimeException;
+import net.didion.jwnl.data.POS;
+import net.didion.jwnl.dictionary.file.DictionaryFile;
+import net.didion.jwnl.dictionary.file.DictionaryFileType;
+import net.didion.jwnl.princeton.file.AbstractPrincetonRandomAccessDictionaryFile;
+
+/*
+ * WordNet dictionary file read from a read-only memory mapping instead of a
+ * RandomAccessFile, so that seeking and reading a line are plain memory
+ * accesses. Selected in file_properties.xml through the file_type parameter
+ * of PluginFileManager.
+ *
+ * The files are ISO-8859-1 encoded: a byte is a char.
+ */
+public class MappedDictionaryFile extends AbstractPrincetonRandomAccessDictionaryFile {
+
+  private MappedByteBuffer buffer = null;
+  private int position = 0;
+
+  public MappedDictionaryFile() {
+  }
+
+  public MappedDictionaryFile(final String path, final POS pos, final DictionaryFileType fileType) {
+    super(path, pos, fileType);
+  }
+
+  @Override
+  public DictionaryFile newInstance(final String path, final POS pos,
+      final DictionaryFileType fileType) {
+    return new MappedDictionaryFile(path, pos, fileType);
+  }
+
+  @Override
+  protected void openFile(final File file) throws IOException {
+
+    /* the mapping stays valid once the channel is closed */
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      final FileChannel channel = raf.getChannel();
+      this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    this.position = 0;
+  }
+
+  @Override
+  public boolean isOpen() {
+    return this.buffer != null;
+  }
+
+  @Override
+  public void close() {
+    this.buffer = null;
+    this.position = 0;
+  }
+
+  private MappedByteBuffer checkOpen() {
+
+    final MappedByteBuffer mapped = this.buffer;
+    if (mapped == null) {
+      throw new JWNLRuntimeException("PRINCETON_EXCEPTION_001", this.getFile());
+    }
+    return mapped;
+  }
+
+  @Override
+  public String readLine() throws IOException {
+
+    final MappedByteBuffer mapped = this.checkOpen();
+    final int limit = mapped.limit();
+
+    if (this.position >= limit) {
+      return null;
+    }
+
+    final int start = this.position;
+    int end = start;
+    while (end < limit && mapped.get(end) != '\n' && mapped.get(end) != '\r') {
+      end++;
+    }
+
+    final char[] line = new char[end - start];
+    for (int i = 0; i < line.length; i++) {
+      line[i] = (char) (mapped.get(start + i) & 0xff);
+    }
+    /* like PrincetonRandomAccessDictionaryFile, only the first line terminator is consumed */
+    this.position = end < limit ? end + 1 : end;
+    return new String(line);
+  }
+
+  @Override
+  public void seek(final long pos) throws IOException {
+    this.checkOpen();
+    this.position = (int) pos;
+  }
+
+  @Override
+  public long getFilePointer() throws IOException {
+    this.checkOpen();
+    return this.position;
+  }
+
+  @Override
+  public long length() throws IOException {
+    return this.checkOpen().limit();
+  }
+
+  @Override
+  public int read() throws IOException {
+
+    final MappedByteBuffer mapped = this.checkOpen();
+    if (this.position >= mapped.limit()) {
+      return -1;
+    }
+    return mapped.get(this.position++) & 0xff;
+  }
+
+  /*
+   * offset of the line whose first word is target in this sorted index file,
+   * or -1 if there is none. Works on absolute offsets of the mapping and leaves
+   * the file pointer untouched.
+   */
+  public long binarySearch(final String target) {
+
+    final MappedByteBuffer mapped = this.checkOpen();
+    int low = 0;
+    int high = mapped.limit();
+
+    while (low < high) {
+      final int middle = (low + high) >>> 1;
+      int start = middle;
+      while (start > 0 && mapped.get(start - 1) != '\n') {
+        start--;
+      }
+      int end = middle;
+      while (end < mapped.limit() && mapped.get(end) != '\n') {
+        end++;
+      }
+
+      final int comparison = MappedDictionaryFile.compare(mapped, target, start, end);
+      if (comparison == 0) {
+        return start;
+      } else if (comparison < 0) {
+        high = start;
+      } else {
+        low = end + 1;
+      }
+    }
+    return -1;
+  }
+
+  /*
+   * compares target to the first word of the line [start, end), in the order
+   * of String.compareTo used to sort the index files.
+   */
+  private static int compare(final MappedByteBuffer mapped, final String target, final int start,
+      final int end) {
+
+    int i = 0;
+    for (int pos = start; pos < end; pos++, i++) {
+      final char c = (char) (mapped.get(pos) & 0xff);
+      if (c == ' ') {
+        break;
+      }
+      if (i == target.length()) {
+        return -1;
+      }
+      if (target.charAt(i) != c) {
+        return target.charAt(i) - c;
+      }
+    }
+    return i == target.length() ? 0 : 1;
+  }
+
+  /*
+   * offset of the line following the one starting at offset.
+   */
+  public long nextLineOffset(final long offset) {
+
+    final MappedByteBuffer mapped = this.checkOpen();
+    int end = (int) offset;
+    while (end < mapped.limit() && mapped.get(end) != '\n') {
+      end++;
+    }
+    return Math.min(end + 1, mapped.limit());
+  }
+
+}
@@ -0,0 +1,414 @@
+package utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * on-disk cache of tagged identifiers shared between runs. The file starts
+ * with a header holding a fingerprint of the tagging configuration, an id
+ * changed whenever the header is written, and the end of the records, followed
+ * by appended records:
+ *
+ * [short key length][key][byte term count]([short length][term][byte length][tag])*
+ *
+ * Existing records are read through memory-mapped segments of the file of at
+ * most SEGMENT_SIZE bytes; new records are kept in memory until flush()
+ * appends them, then read from the file like the others. A file written with
+ * another fingerprint (other model, other engine...) is started over on open.
+ *
+ * Processes sharing the file append under a file lock, at the end written in
+ * the header; the bytes after it, left by a process that died while appending
+ * or by a previous configuration, are overwritten. The file is never
+ * truncated, since a mapped file cannot be on Windows.
+ */
+public final class PersistentTagCache {
+
+  private static final int MAGIC = 0x4c415054; // "LAPT"
+  private static final int VERSION = 2;
+  private static final int ID_OFFSET = 16;
+  private static final int END_OFFSET = 24;
+  private static final int HEADER_SIZE = 32;
+  private static final int SEGMENT_SIZE = 1 << 30;
+  private static final int MAX_STRING_LENGTH = 0xffff;
+  private static final int MAX_TAG_LENGTH = 0xff;
+  /* file locks are held by the JVM, the instances of a JVM take turns with this */
+  private static final Object FILE_LOCK = new Object();
+
+  private final File file;
+  private final long fingerprint;
+  private final int segmentSize;
+  /* the id of the header the records were read under */
+  private long id;
+  private final List<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+  private long lastSegmentStart = HEADER_SIZE;
+  /* the end of the records read from the file */
+  private long mappedEnd = HEADER_SIZE;
+  /* segment index in the high half, position of the value in the low half */
+  private final Map<String, Long> offsets = new HashMap<String, Long>();
+  private final Map<String, TaggedIdentifier> pending = new LinkedHashMap<String, TaggedIdentifier>();
+
+  private PersistentTagCache(final File file, final long fingerprint, final int segmentSize) {
+    this.file = file;
+    this.fingerprint = fingerprint;
+    this.segmentSize = segmentSize;
+  }
+
+  public static PersistentTagCache open(final File file, final long fingerprint)
+      throws IOException {
+    return PersistentTagCache.open(file, fingerprint, SEGMENT_SIZE);
+  }
+
+  static PersistentTagCache open(final File file, final long fingerprint,
+      final int segmentSize) throws IOException {
+
+    final PersistentTagCache cache = new PersistentTagCache(file, fingerprint, segmentSize);
+    cache.load();
+    return cache;
+  }
+
+  /*
+   * 64-bit FNV-1a hash of the parts describing the tagging configuration.
+   */
+  public static long fingerprint(final String... parts) {
+
+    long hash = 0xcbf29ce484222325L;
+
+    for (final String part : parts) {
+      final byte[] bytes = String.valueOf(part).getBytes(StandardCharsets.UTF_8);
+      for (final byte b : bytes) {
+        hash ^= b & 0xff;
+        hash *= 0x100000001b3L;
+      }
+      hash ^= 0xff;
+      hash *= 0x100000001b3L;
+    }
+    return hash;
+  }
+
+  public File getFile() {
+    return this.file;
+  }
+
+  public long getFingerprint() {
+    return this.fingerprint;
+  }
+
+  private void load() throws IOException {
+
+    final File parent = this.file.getAbsoluteFile().getParentFile();
+    if (parent != null && !parent.exists()) {
+      parent.mkdirs();
+    }
+
+    synchronized (PersistentTagCache.FILE_LOCK) {
+      try (RandomAccessFile raf = new RandomAccessFile(this.file, "rw");
+          FileLock lock = raf.getChannel().lock()) {
+        final FileChannel channel = raf.getChannel();
+
+        if (!this.hasValidHeader(channel)) {
+          this.writeHeader(channel);
+          return;
+        }
+        this.id = PersistentTagCache.readLong(channel, ID_OFFSET);
+        this.map(channel, PersistentTagCache.readEnd(channel));
+      }
+    }
+  }
+
+  private boolean hasValidHeader(final FileChannel channel) throws IOException {
+
+    if (channel.size() < HEADER_SIZE) {
+      return false;
+    }
+
+    final ByteBuffer header = ByteBuffer.allocate(ID_OFFSET);
+    channel.read(header, 0);
+    header.flip();
+
+    return header.getInt() == MAGIC && header.getInt() == VERSION
+        && header.getLong() == this.fingerprint;
+  }
+
+  /*
+   * starts the file over for this configuration, with no record.
+   */
+  private void writeHeader(final FileChannel channel) throws IOException {
+
+    final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+    this.id = System.nanoTime() ^ System.identityHashCode(this) ^ this.fingerprint;
+    header.putInt(MAGIC).putInt(VERSION).putLong(this.fingerprint).putLong(this.id)
+        .putLong(HEADER_SIZE);
+    header.flip();
+    PersistentTagCache.write(channel, header, 0);
+  }
+
+  private static long readLong(final FileChannel channel, final long position)
+      throws IOException {
+
+    final ByteBuffer value = ByteBuffer.allocate(8);
+
+    while (value.hasRemaining() && channel.read(value, position + value.position()) > 0) {
+      /* reads the 8 bytes */
+    }
+    value.flip();
+    return value.getLong();
+  }
+
+  /*
+   * the end of the records written in the header, within the file.
+   */
+  private static long readEnd(final FileChannel channel) throws IOException {
+    return Math.max(HEADER_SIZE,
+        Math.min(channel.size(), PersistentTagCache.readLong(channel, END_OFFSET)));
+  }
+
+  private static void write(final FileChannel channel, final ByteBuffer buffer, long position)
+      throws IOException {
+
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer, position);
+    }
+  }
+
+  /*
+   * maps and indexes the records from the end of those read up to end. The
+   * last segment is mapped again to cover the new records while it is smaller
+   * than the segment size; a segment holds whole records.
+   */
+  private void map(final FileChannel channel, final long end) throws IOException {
+
+    while (this.mappedEnd < end) {
+      if (this.segments.isEmpty() || end - this.lastSegmentStart > this.segmentSize) {
+        this.lastSegmentStart = this.mappedEnd;
+        this.segments.add(null);
+      }
+
+      final long length = Math.min(end - this.lastSegmentStart, this.segmentSize);
+      final MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY,
+          this.lastSegmentStart, length);
+      final int index = this.segments.size() - 1;
+      final int scanned = PersistentTagCache.scan(segment.duplicate(),
+          (int) (this.mappedEnd - this.lastSegmentStart), index, this.offsets);
+
+      this.segments.set(index, segment);
+      if (this.lastSegmentStart + scanned == this.mappedEnd) {
+        /* a record cut by the end given in the header: ignored */
+        return;
+      }
+      this.mappedEnd = this.lastSegmentStart + scanned;
+    }
+  }
+
+  /*
+   * walks the complete records from the position, records the offset of their
+   * value, and returns the position following the last one.
+   */
+  private static int scan(final ByteBuffer buffer, final int from, final int segment,
+      final Map<String, Long> offsets) {
+
+    buffer.position(from);
+    while (buffer.hasRemaining()) {
+      final int start = buffer.position();
+
+      try {
+        final String key = PersistentTagCache.readString(buffer, buffer.getShort() & 0xffff);
+        final int valueOffset = buffer.position();
+        final int count = buffer.get() & 0xff;
+
+        for (int i = 0; i < count; i++) {
+          PersistentTagCache.skip(buffer, buffer.getShort() & 0xffff);
+          PersistentTagCache.skip(buffer, buffer.get() & 0xff);
+        }
+        offsets.put(key, (long) segment << 32 | valueOffset);
+      } catch (final RuntimeException e) {
+        return start;
+      }
+    }
+    return buffer.position();
+  }
+
+  private static void skip(final ByteBuffer buffer, final int length) {
+    buffer.position(buffer.position() + length);
+  }
+
+  private static String readString(final ByteBuffer buffer, final int length) {
+
+    final byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  public synchronized int size() {
+    return this.offsets.size() + this.pending.size();
+  }
+
+  public synchronized TaggedIdentifier get(final String key) {
+
+    final TaggedIdentifier tagged = this.pending.get(key);
+    if (tagged != null) {
+      return tagged;
+    }
+
+    final Long offset = this.offsets.get(key);
+    if (offset == null) {
+      return null;
+    }
+
+    final ByteBuffer buffer = this.segments.get((int) (offset >>> 32)).duplicate();
+
+    try {
+      buffer.position((int) offset.longValue());
+      final int count = buffer.get() & 0xff;
+      final String[] tokens = new String[count];
+      final String[] tags = new String[count];
+
+      for (int i = 0; i < count; i++) {
+        tokens[i] = PersistentTagCache.readString(buffer, buffer.getShort() & 0xffff);
+        tags[i] = PersistentTagCache.readString(buffer, buffer.get() & 0xff);
+      }
+      return new TaggedIdentifier(tokens, tags);
+    } catch (final RuntimeException e) {
+      /* the file was started over by another configuration since it was read */
+      return null;
+    }
+  }
+
+  public synchronized void put(final String key, final TaggedIdentifier tagged) {
+
+    if (this.offsets.containsKey(key) || this.pending.containsKey(key)
+        || !PersistentTagCache.fits(key, tagged)) {
+      return;
+    }
+    this.pending.put(key, tagged);
+  }
+
+  private static boolean fits(final String key, final TaggedIdentifier tagged) {
+
+    if (tagged.size() > 0xff || PersistentTagCache.length(key) > MAX_STRING_LENGTH) {
+      return false;
+    }
+    for (int i = 0; i < tagged.size(); i++) {
+      if (PersistentTagCache.length(tagged.getToken(i)) > MAX_STRING_LENGTH
+          || PersistentTagCache.length(tagged.getTag(i)) > MAX_TAG_LENGTH) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int length(final String value) {
+    return value.getBytes(StandardCharsets.UTF_8).length;
+  }
+
+  /*
+   * appends the records added since the last flush at the end of the file,
+   * then reads them from the file with those other processes appended, so that
+   * they are no longer kept in memory.
+   */
+  public synchronized void flush() throws IOException {
+
+    if (this.pending.isEmpty()) {
+      return;
+    }
+
+    final ByteArrayBuilder records = new ByteArrayBuilder();
+    for (final Map.Entry<String, TaggedIdentifier> entry : this.pending.entrySet()) {
+      final TaggedIdentifier tagged = entry.getValue();
+
+      records.putString(entry.getKey(), true);
+      records.put((byte) tagged.size());
+      for (int i = 0; i < tagged.size(); i++) {
+        records.putString(tagged.getToken(i), true);
+        records.putString(tagged.getTag(i), false);
+      }
+    }
+
+    synchronized (PersistentTagCache.FILE_LOCK) {
+      try (RandomAccessFile raf = new RandomAccessFile(this.file, "rw");
+          FileLock lock = raf.getChannel().lock()) {
+        final FileChannel channel = raf.getChannel();
+
+        if (!this.hasValidHeader(channel)) {
+          /* another configuration took the file over: the records are dropped */
+          this.pending.clear();
+          this.forget();
+          return;
+        }
+        if (PersistentTagCache.readLong(channel, ID_OFFSET) != this.id) {
+          /* started over by another configuration, then by this one: read again */
+          this.id = PersistentTagCache.readLong(channel, ID_OFFSET);
+          this.forget();
+        }
+
+        final long end = PersistentTagCache.readEnd(channel);
+        final ByteBuffer newEnd = ByteBuffer.allocate(8);
+
+        PersistentTagCache.write(channel, ByteBuffer.wrap(records.bytes, 0, records.length),
+            end);
+        newEnd.putLong(end + records.length);
+        newEnd.flip();
+        PersistentTagCache.write(channel, newEnd, END_OFFSET);
+        this.map(channel, end + records.length);
+      }
+    }
+    this.pending.clear();
+  }
+
+  /*
+   * drops the records read from the file.
+   */
+  private void forget() {
+    this.segments.clear();
+    this.offsets.clear();
+    this.lastSegmentStart = HEADER_SIZE;
+    this.mappedEnd = HEADER_SIZE;
+  }
+
+  /*
+   * growable byte array used to encode the records before appending them.
+   */
+  private static final class ByteArrayBuilder {
+
+    private byte[] bytes = new byte[4096];
+    private int length = 0;
+
+    private void ensure(final int extra) {
+      if (this.length + extra > this.bytes.length) {
+        this.bytes = Arrays.copyOf(this.bytes,
+            Math.max(this.bytes.length * 2, this.length + extra));
+      }
+    }
+
+    private void put(final byte b) {
+      this.ensure(1);
+      this.bytes[this.length++] = b;
+    }
+
+    private void putString(final String value, final boolean wideLength) {
+
+      final byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+
+      this.ensure(encoded.length + 2);
+      if (wideLength) {
+        this.bytes[this.length++] = (byte) (encoded.length >>> 8);
+      }
+      this.bytes[this.length++] = (byte) encoded.length;
+      System.arraycopy(encoded, 0, this.bytes, this.length, encoded.length);
+      this.length += encoded.length;
+    }
+  }
+
+}
@@ -24,6 +24,7 @@ package utils;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
@@ -33,7 +34,9 @@ import org.eclipse.core.runtime.FileLocator;
 
 import net.didion.jwnl.JWNLException;
 import net.didion.jwnl.JWNLRuntimeException;
+import net.didion.jwnl.data.POS;
 import net.didion.jwnl.dictionary.file.DictionaryFile;
+import net.didion.jwnl.dictionary.file.DictionaryFileType;
 import net.didion.jwnl.dictionary.file_manager.FileManagerImpl;
 import net.didion.jwnl.util.factory.Param;
 
@@ -64,19 +67,82 @@ public class PluginFileManager extends FileManagerImpl {
     final String path = ((Param) params.get(FileManagerImpl.PATH)).getValue();
 
     try {
-      final URL url = FileLocator.toFileURL(new URL(path));
-      final String dir = new File(new URI(url.getProtocol(), url.getAuthority(), null,
-          url.getPort(), url.getPath(), url.getQuery(), url.getRef())).getPath() + File.separator;
+      final String dir = toDirectory(path).getPath() + File.separator;
       // System.out.println("PATH:" + dir);
       return new PluginFileManager(dir, fileClass);
 
     } catch (final IOException ex) {
       throw new JWNLException("DICTIONARY_EXCEPTION_016", fileClass, ex);
+    }
+  }
+
+  /**
+   * Searches the sorted index files directly in memory when they are mapped.
+   * 
+   * @param pos
+   * @param fileType
+   * @param target
+   */
+  @Override
+  public long getIndexedLinePointer(final POS pos, final DictionaryFileType fileType,
+      final String target) throws IOException {
+
+    final DictionaryFile file = this.getFile(pos, fileType);
+
+    if (!(file instanceof MappedDictionaryFile)) {
+      return super.getIndexedLinePointer(pos, fileType, target);
+    }
+
+    final MappedDictionaryFile mapped = (MappedDictionaryFile) file;
+    final long offset = mapped.binarySearch(target.replace(' ', '_'));
+
+    if (offset >= 0) {
+      synchronized (mapped) {
+        mapped.setNextLineOffset(offset, mapped.nextLineOffset(offset));
+      }
+    }
+    return offset;
+  }
+
+  /**
+   * Tells whether the platform: URLs of the plugins can be resolved, that is,
+   * if running inside Eclipse.
+   */
+  public static boolean isPlatformAvailable() {
+    try {
+      new URL("platform:/");
+      return true;
+    } catch (final MalformedURLException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Resolves a URL of the dictionary to a directory of the file system: a
+   * plugin URL through the Eclipse platform, or a file URL.
+   * 
+   * @param path
+   */
+  public static File toDirectory(final String path) throws IOException {
+
+    if (!path.startsWith("platform:")) {
+      try {
+        return new File(new URL(path).toURI());
+      } catch (final URISyntaxException | IllegalArgumentException e) {
+        throw new IOException(
+            "not a directory, see " + CustomDictionary.DICTIONARY_DIRECTORY_PROPERTY + ": " + path,
+            e);
+      }
+    }
+
+    final URL url = FileLocator.toFileURL(new URL(path));
+
+    try {
+      return new File(new URI(url.getProtocol(), url.getAuthority(), null, url.getPort(),
+          url.getPath(), url.getQuery(), url.getRef()));
     } catch (final URISyntaxException e) {
-      // TODO Auto-generated catch block
-      e.printStackTrace();
+      throw new IOException(e);
     }
-    return null;
   }
 
   /**
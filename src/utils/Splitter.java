@@ -1,44 +1,88 @@
 
 package utils;
 
+import java.util.Arrays;
 import java.util.Vector;
 import java.util.regex.Pattern;
 
 public class Splitter {
 
-  private final static String UPPER_CASE = "(?=[A-Z])";
   private final static Pattern SPECIAL_CHARS = Pattern
       .compile(" |\\n|\\r|\\t|\\.|,|\\(|\\)|\\{|\\}|\\[|\\]|;|=|<|>|'|\""
           + "|\\+|\\-|\\*|/|\\||!|\\\\|\\@|#|\\$|%|\\?|&|\\^|_|:|\\||~|`|[0-9]+ ");
 
-  public static Vector<String> methodSplitter(String methodName) {
+  /* one reusable scanner per thread */
+  private final static ThreadLocal<IdentifierScanner> SCANNERS = ThreadLocal
+      .withInitial(IdentifierScanner::new);
 
-    final String[] splitted = methodName.split(UPPER_CASE);
-    final Vector<String> result = new Vector<String>();
+  /*
+   * the scanner of the current thread; its terms are only valid until the next
+   * scan on this thread.
+   */
+  public static IdentifierScanner scanner() {
+    return SCANNERS.get();
+  }
 
-    for (final String word : splitted) {
+  public static Vector<String> methodSplitter(final String methodName) {
+    return Splitter.toVector(SCANNERS.get().scan(methodName, false));
+  }
 
-      if (word.length() > 0) {
-        result.addElement(word.toLowerCase());
+  public static Vector<String> variableSplitter(final String variableName) {
+    return Splitter.toVector(SCANNERS.get().scan(variableName, true));
+  }
+
+  /*
+   * the ids of the terms of methodSplitter(methodName).
+   */
+  public static int[] methodTermIds(final String methodName) {
+    return Splitter.toTermIds(SCANNERS.get().scan(methodName, false));
+  }
+
+  /*
+   * the ids of the terms of variableSplitter(variableName).
+   */
+  public static int[] variableTermIds(final String variableName) {
+    return Splitter.toTermIds(SCANNERS.get().scan(variableName, true));
+  }
+
+  /*
+   * the distinct term ids of first then second, in order.
+   */
+  public static int[] union(final int[] first, final int[] second) {
+
+    final int[] result = new int[first.length + second.length];
+    int size = 0;
+
+    for (final int[] terms : new int[][] { first, second }) {
+      for (final int term : terms) {
+        boolean found = false;
+        for (int i = 0; i < size && !found; i++) {
+          found = result[i] == term;
+        }
+        if (!found) {
+          result[size++] = term;
+        }
       }
     }
-    return result;
+    return Arrays.copyOf(result, size);
   }
 
-  public static Vector<String> variableSplitter(String variableName) {
+  private static int[] toTermIds(final IdentifierScanner scanner) {
+
+    final int[] result = new int[scanner.size()];
 
-    if (variableName.equals(variableName.toUpperCase())) {
-      variableName = variableName.toLowerCase();
+    for (int i = 0; i < result.length; i++) {
+      result[i] = scanner.termId(i);
     }
+    return result;
+  }
 
-    final String[] splitted = variableName.split("(?=[A-Z])|\\_");
-    final Vector<String> result = new Vector<String>();
+  private static Vector<String> toVector(final IdentifierScanner scanner) {
 
-    for (final String word : splitted) {
+    final Vector<String> result = new Vector<String>(scanner.size());
 
-      if (word.length() > 0) {
-        result.addElement(word.toLowerCase());
-      }
+    for (int i = 0; i < scanner.size(); i++) {
+      result.addElement(scanner.term(i));
     }
     return result;
   }
@@ -59,14 +103,14 @@ public class Splitter {
 
   public static String toString(final Vector<String> splittedMethod) {
 
-    String result = "";
+    final StringBuilder result = new StringBuilder();
     for (final String word : splittedMethod) {
-      result = result + word + " ";
-    }
-    if (result.endsWith(" ")) {
-      result = result.substring(0, result.length() - 1);
+      if (result.length() > 0) {
+        result.append(' ');
+      }
+      result.append(word);
     }
-    return result;
+    return result.toString();
   }
 
 }
\ No newline at end of file
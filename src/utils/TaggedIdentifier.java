@@ -0,0 +1,137 @@
+package utils;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * terms of an identifier with the part of speech assigned to each of them.
+ * The terms are stored as Terms ids and the tags as ids in a shared table so
+ * that an instance can be kept in the parser cache and queried any number of
+ * times without parsing again.
+ */
+public final class TaggedIdentifier {
+
+  private static final Object LOCK = new Object();
+  private static volatile String[] tagNames = new String[0];
+  private static final Map<String, Byte> TAG_IDS = new ConcurrentHashMap<String, Byte>();
+
+  static {
+    for (final String tag : new String[] { "CC", "CD", "DT", "EX", "FW", "IN", "JJ", "JJR", "JJS",
+        "LS", "MD", "NN", "NNS", "NNP", "NNPS", "PDT", "POS", "PRP", "PRP$", "RB", "RBR", "RBS",
+        "RP", "SYM", "TO", "UH", "VB", "VBD", "VBG", "VBN", "VBP", "VBZ", "WDT", "WP", "WP$", "WRB",
+        "#", "$", ".", ",", ":", "(", ")", "``", "''", "-LRB-", "-RRB-" }) {
+      TaggedIdentifier.tagId(tag);
+    }
+  }
+
+  private final int[] tokens;
+  private final byte[] tags;
+
+  TaggedIdentifier(final String[] tokens, final String[] tags) {
+
+    this.tokens = new int[tokens.length];
+    this.tags = new byte[tags.length];
+
+    for (int i = 0; i < tags.length; i++) {
+      this.tokens[i] = Terms.id(tokens[i]);
+      this.tags[i] = TaggedIdentifier.tagId(tags[i]);
+    }
+  }
+
+  private static byte tagId(final String tag) {
+
+    final Byte id = TaggedIdentifier.TAG_IDS.get(tag);
+
+    if (id != null) {
+      return id;
+    }
+    synchronized (TaggedIdentifier.LOCK) {
+      if (!TaggedIdentifier.TAG_IDS.containsKey(tag)) {
+        final int next = TaggedIdentifier.tagNames.length;
+
+        if (next > Byte.MAX_VALUE) {
+          throw new IllegalStateException("too many distinct tags: " + tag);
+        }
+        final String[] extended = Arrays.copyOf(TaggedIdentifier.tagNames, next + 1);
+        extended[next] = tag;
+        TaggedIdentifier.tagNames = extended;
+        TaggedIdentifier.TAG_IDS.put(tag, (byte) next);
+      }
+      return TaggedIdentifier.TAG_IDS.get(tag);
+    }
+  }
+
+  public int size() {
+    return this.tokens.length;
+  }
+
+  public String getToken(final int index) {
+    return Terms.name(this.tokens[index]);
+  }
+
+  public int getTermId(final int index) {
+    return this.tokens[index];
+  }
+
+  public String getTag(final int index) {
+    return TaggedIdentifier.tagNames[this.tags[index]];
+  }
+
+  /*
+   * returns the part of speech of the first occurrence of term, or null if the
+   * term is not part of the identifier.
+   */
+  public String getPOS(final String term) {
+    return this.getPOS(Terms.find(term));
+  }
+
+  public String getPOS(final int termId) {
+
+    for (int i = 0; i < this.tokens.length; i++) {
+      if (this.tokens[i] == termId) {
+        return this.getTag(i);
+      }
+    }
+    return null;
+  }
+
+  public boolean hasPOS(final String pos) {
+
+    for (int i = 0; i < this.tags.length; i++) {
+      if (this.getTag(i).equalsIgnoreCase(pos)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public boolean hasPOSInAnyForm(final String pos) {
+
+    for (int i = 0; i < this.tags.length; i++) {
+      if (this.getTag(i).startsWith(pos)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public String getAllPOS() {
+
+    final StringBuilder result = new StringBuilder();
+
+    for (int i = 0; i < this.tokens.length; i++) {
+      if (i > 0) {
+        result.append(' ');
+      }
+      result.append(this.getToken(i)).append('/').append(this.getTag(i));
+    }
+    return result.toString();
+  }
+
+  @Override
+  public String toString() {
+    return this.getAllPOS();
+  }
+
+}
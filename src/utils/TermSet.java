@@ -0,0 +1,46 @@
+package utils;
+
+import java.util.Collection;
+
+/*
+ * immutable set of term ids, stored as a bit set over the dense ids of Terms.
+ */
+public final class TermSet {
+
+  private final long[] bits;
+
+  private TermSet(final long[] bits) {
+    this.bits = bits;
+  }
+
+  /*
+   * the set of the given terms, lower cased.
+   */
+  public static TermSet of(final Collection<String> terms) {
+
+    final int[] ids = new int[terms.size()];
+    int max = -1;
+    int i = 0;
+
+    for (final String term : terms) {
+      ids[i] = Terms.id(term.toLowerCase());
+      max = Math.max(max, ids[i]);
+      i++;
+    }
+
+    final long[] bits = new long[(max >> 6) + 1];
+    for (final int id : ids) {
+      bits[id >> 6] |= 1L << id;
+    }
+    return new TermSet(bits);
+  }
+
+  public boolean contains(final int id) {
+    return id >= 0 && id >> 6 < this.bits.length && (this.bits[id >> 6] & 1L << id) != 0;
+  }
+
+  public boolean contains(final String term) {
+    return this.contains(Terms.find(term));
+  }
+
+}
@@ -0,0 +1,146 @@
+package utils;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * global table of the terms met during the analysis, each mapped to a dense
+ * int id. The splitters, the tag cache, the keyword sets and the antonym cache
+ * compare and hash these ids instead of strings. Terms are interned as given:
+ * the splitters already lower case them.
+ *
+ * Ids are never released; the table grows with the vocabulary of the analyzed
+ * code, not with its size. Only the terms of identifiers and keywords are
+ * interned, and the comment words that may have an antonym in the dictionary:
+ * the other comment words are dropped as strings, so that a long-lived
+ * process such as the daemon does not keep all the words of the comments it
+ * read.
+ */
+public final class Terms {
+
+  private static final Object LOCK = new Object();
+  private static final Map<Object, Integer> IDS = new ConcurrentHashMap<Object, Integer>();
+  private static volatile String[] names = new String[1024];
+  private static volatile int count = 0;
+
+  /* lookup key for a term of a scanner, compared to the interned strings */
+  private static final ThreadLocal<ScannedTerm> PROBES = ThreadLocal
+      .withInitial(ScannedTerm::new);
+
+  private Terms() {
+  }
+
+  /*
+   * the id of term, interning it if needed.
+   */
+  public static int id(final String term) {
+
+    final Integer id = Terms.IDS.get(term);
+    return id != null ? id : Terms.register(term);
+  }
+
+  /*
+   * the id of term, or -1 if it was never interned.
+   */
+  public static int find(final String term) {
+
+    final Integer id = Terms.IDS.get(term);
+    return id != null ? id : -1;
+  }
+
+  /*
+   * the id of the lower cased term at index in the scanner, interning it if
+   * needed. No string is built for a term already interned.
+   */
+  public static int id(final IdentifierScanner scanner, final int index) {
+
+    final int id = Terms.find(scanner, index);
+    return id >= 0 ? id : Terms.register(scanner.term(index));
+  }
+
+  public static int find(final IdentifierScanner scanner, final int index) {
+
+    final ScannedTerm probe = PROBES.get().set(scanner, index);
+    final Integer id = Terms.IDS.get(probe);
+    return id != null ? id : -1;
+  }
+
+  public static String name(final int id) {
+    return Terms.names[id];
+  }
+
+  public static int size() {
+    return Terms.count;
+  }
+
+  private static int register(final String term) {
+
+    synchronized (Terms.LOCK) {
+      final Integer existing = Terms.IDS.get(term);
+      if (existing != null) {
+        return existing;
+      }
+
+      final int id = Terms.count;
+      if (id == Terms.names.length) {
+        Terms.names = Arrays.copyOf(Terms.names, id * 2);
+      }
+      Terms.names[id] = term;
+      Terms.count = id + 1;
+      /* published last: whoever finds the id also sees its name */
+      Terms.IDS.put(term, id);
+      return id;
+    }
+  }
+
+  /*
+   * a term of a scanner, lower cased on the fly, with the hash code of the
+   * equivalent string so that it finds it in the table.
+   */
+  private static final class ScannedTerm {
+
+    private IdentifierScanner scanner;
+    private int index;
+    private int hash;
+
+    private ScannedTerm set(final IdentifierScanner scanner, final int index) {
+
+      this.scanner = scanner;
+      this.index = index;
+
+      int h = 0;
+      for (int i = scanner.start(index); i < scanner.end(index); i++) {
+        h = 31 * h + scanner.lowerCaseChar(i);
+      }
+      this.hash = h;
+      return this;
+    }
+
+    @Override
+    public int hashCode() {
+      return this.hash;
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+
+      if (!(other instanceof String)) {
+        return false;
+      }
+      final String term = (String) other;
+      final int start = this.scanner.start(this.index);
+
+      if (term.length() != this.scanner.length(this.index)) {
+        return false;
+      }
+      for (int i = 0; i < term.length(); i++) {
+        if (term.charAt(i) != this.scanner.lowerCaseChar(start + i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+}
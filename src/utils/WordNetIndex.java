@@ -0,0 +1,486 @@
+package utils;
+
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.StringTokenizer;
+
+/*
+ * in-memory index of the WordNet relations used by the antonym checks, built
+ * once from the index.* and data.* files of the dictionary: every lemma gets
+ * an int id, every synset an int id, and the antonym and similar-to pointers
+ * are stored as adjacency arrays between synset ids.
+ *
+ * A relation between two senses mirrors the depth-2 symmetric search of JWNL's
+ * RelationshipFinder: a sense is related to itself, to the targets of its
+ * pointers and to the targets of their pointers.
+ */
+public final class WordNetIndex {
+
+  /* part of speech keys, in the order of the arrays below */
+  static final String[] POS_KEYS = { "n", "v", "a", "r" };
+  static final String[] POS_FILES = { "noun", "verb", "adj", "adv" };
+
+  private static final int SEARCH_DEPTH = 2;
+
+  private final Map<String, Integer> lemmaIds;
+  /* synset ids of the senses of each lemma, per part of speech */
+  private final int[][][] senses;
+  /* adjacency arrays: the targets of synset s are targets[start[s]..start[s + 1]) */
+  private final int[] antonymStart;
+  private final int[] antonymTargets;
+  private final int[] similarStart;
+  private final int[] similarTargets;
+
+  WordNetIndex(final Map<String, Integer> lemmaIds, final int[][][] senses,
+      final int[] antonymStart, final int[] antonymTargets, final int[] similarStart,
+      final int[] similarTargets) {
+
+    this.lemmaIds = lemmaIds;
+    this.senses = senses;
+    this.antonymStart = antonymStart;
+    this.antonymTargets = antonymTargets;
+    this.similarStart = similarStart;
+    this.similarTargets = similarTargets;
+  }
+
+  static int posIndex(final String posKey) {
+
+    for (int i = 0; i < POS_KEYS.length; i++) {
+      if (POS_KEYS[i].equals(posKey)) {
+        return i;
+      }
+    }
+    /* adjective satellites are adjectives */
+    return "s".equals(posKey) ? 2 : -1;
+  }
+
+  public int getLemmaId(final String lemma) {
+
+    final Integer id = this.lemmaIds.get(lemma);
+    return id == null ? -1 : id;
+  }
+
+  public int getSynsetCount() {
+    return this.antonymStart.length - 1;
+  }
+
+  public int getLemmaCount() {
+    return this.lemmaIds.size();
+  }
+
+  /*
+   * true if the lemma has senses in the given part of speech.
+   */
+  public boolean hasLemma(final String lemma, final String posKey) {
+    return this.getSenses(WordNetIndex.posIndex(posKey), this.getLemmaId(lemma)) != null;
+  }
+
+  int[] getSenses(final int posIndex, final int lemmaId) {
+
+    if (posIndex < 0 || lemmaId < 0 || lemmaId >= this.senses[posIndex].length) {
+      return null;
+    }
+    return this.senses[posIndex][lemmaId];
+  }
+
+  /*
+   * same verdict as CustomDictionary.haveAntonyms for two index words of the
+   * given part of speech: some senses are antonyms and none are similar.
+   */
+  public boolean haveAntonyms(final String source, final String target, final String posKey) {
+
+    final int posIndex = WordNetIndex.posIndex(posKey);
+    final int[] sourceSenses = this.getSenses(posIndex, this.getLemmaId(source));
+    final int[] targetSenses = this.getSenses(posIndex, this.getLemmaId(target));
+
+    if (sourceSenses == null || targetSenses == null) {
+      return false;
+    }
+    return this.related(sourceSenses, targetSenses, this.antonymStart, this.antonymTargets)
+        && !this.related(sourceSenses, targetSenses, this.similarStart, this.similarTargets);
+  }
+
+  /*
+   * true if one of the senses of the lemma has an antonym, which is required
+   * for haveAntonyms to be true.
+   */
+  public boolean hasAntonym(final String lemma, final String posKey) {
+
+    final int[] lemmaSenses = this.getSenses(WordNetIndex.posIndex(posKey),
+        this.getLemmaId(lemma));
+
+    if (lemmaSenses != null) {
+      for (final int sense : lemmaSenses) {
+        if (this.antonymStart[sense] < this.antonymStart[sense + 1]) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private boolean related(final int[] sourceSenses, final int[] targetSenses, final int[] start,
+      final int[] targets) {
+
+    for (final int sourceSense : sourceSenses) {
+      for (final int targetSense : targetSenses) {
+        if (this.reachable(sourceSense, targetSense, start, targets, SEARCH_DEPTH)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private boolean reachable(final int source, final int target, final int[] start,
+      final int[] targets, final int depth) {
+
+    if (source == target) {
+      return true;
+    }
+    if (depth == 0) {
+      return false;
+    }
+    for (int i = start[source]; i < start[source + 1]; i++) {
+      if (this.reachable(targets[i], target, start, targets, depth - 1)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /*
+   * reads the index.* and data.* files found in the directory.
+   */
+  public static WordNetIndex build(final File directory) throws IOException {
+
+    final Builder builder = new Builder();
+
+    for (int pos = 0; pos < POS_FILES.length; pos++) {
+      final File data = new File(directory, "data." + POS_FILES[pos]);
+      if (data.isFile()) {
+        builder.readData(data);
+      }
+    }
+    for (int pos = 0; pos < POS_FILES.length; pos++) {
+      final File index = new File(directory, "index." + POS_FILES[pos]);
+      if (index.isFile()) {
+        builder.readIndex(index, pos);
+      }
+    }
+    return builder.build();
+  }
+
+  /*
+   * writes the index in the format read by read(ByteBuffer).
+   */
+  void write(final DataOutputStream out) throws IOException {
+
+    final String[] lemmas = new String[this.lemmaIds.size()];
+    for (final Map.Entry<String, Integer> entry : this.lemmaIds.entrySet()) {
+      lemmas[entry.getValue()] = entry.getKey();
+    }
+    out.writeInt(lemmas.length);
+    for (final String lemma : lemmas) {
+      WordNetIndex.writeString(out, lemma);
+    }
+
+    for (int pos = 0; pos < POS_KEYS.length; pos++) {
+      int count = 0;
+      for (final int[] lemmaSenses : this.senses[pos]) {
+        count += lemmaSenses == null ? 0 : 1;
+      }
+      out.writeInt(count);
+      for (int lemmaId = 0; lemmaId < lemmas.length; lemmaId++) {
+        final int[] lemmaSenses = this.senses[pos][lemmaId];
+        if (lemmaSenses != null) {
+          out.writeInt(lemmaId);
+          WordNetIndex.writeInts(out, lemmaSenses);
+        }
+      }
+    }
+
+    WordNetIndex.writeInts(out, this.antonymStart);
+    WordNetIndex.writeInts(out, this.antonymTargets);
+    WordNetIndex.writeInts(out, this.similarStart);
+    WordNetIndex.writeInts(out, this.similarTargets);
+  }
+
+  static WordNetIndex read(final ByteBuffer buffer) {
+
+    final int lemmaCount = buffer.getInt();
+    final Map<String, Integer> lemmaIds = new HashMap<String, Integer>(lemmaCount * 2);
+    for (int i = 0; i < lemmaCount; i++) {
+      lemmaIds.put(WordNetIndex.readString(buffer), i);
+    }
+
+    final int[][][] senses = new int[POS_KEYS.length][lemmaCount][];
+    for (int pos = 0; pos < POS_KEYS.length; pos++) {
+      final int count = buffer.getInt();
+      for (int i = 0; i < count; i++) {
+        final int lemmaId = buffer.getInt();
+        senses[pos][lemmaId] = WordNetIndex.readInts(buffer);
+      }
+    }
+
+    return new WordNetIndex(lemmaIds, senses, WordNetIndex.readInts(buffer),
+        WordNetIndex.readInts(buffer), WordNetIndex.readInts(buffer),
+        WordNetIndex.readInts(buffer));
+  }
+
+  static void writeString(final DataOutputStream out, final String value) throws IOException {
+
+    final byte[] bytes = value.getBytes(StandardCharsets.ISO_8859_1);
+    out.writeShort(bytes.length);
+    out.write(bytes);
+  }
+
+  static String readString(final ByteBuffer buffer) {
+
+    final byte[] bytes = new byte[buffer.getShort() & 0xffff];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.ISO_8859_1);
+  }
+
+  private static void writeInts(final DataOutputStream out, final int[] values)
+      throws IOException {
+
+    out.writeInt(values.length);
+    for (final int value : values) {
+      out.writeInt(value);
+    }
+  }
+
+  private static int[] readInts(final ByteBuffer buffer) {
+
+    final int[] values = new int[buffer.getInt()];
+    buffer.asIntBuffer().get(values);
+    buffer.position(buffer.position() + values.length * 4);
+    return values;
+  }
+
+  static BufferedReader open(final File file) throws IOException {
+    return new BufferedReader(
+        new InputStreamReader(new FileInputStream(file), StandardCharsets.ISO_8859_1));
+  }
+
+  /*
+   * the WordNet files start with a license whose lines begin with spaces.
+   */
+  static boolean isHeader(final String line) {
+    return line.isEmpty() || line.charAt(0) == ' ';
+  }
+
+  private static final class Builder {
+
+    private final Map<Long, Integer> synsetIds = new HashMap<Long, Integer>();
+    private final Map<String, Integer> lemmaIds = new HashMap<String, Integer>();
+    @SuppressWarnings("unchecked")
+    private final Map<Integer, int[]>[] senses = new Map[POS_KEYS.length];
+    private final IntArray antonymSources = new IntArray();
+    private final LongArray antonymTargets = new LongArray();
+    private final IntArray similarSources = new IntArray();
+    private final LongArray similarTargets = new LongArray();
+
+    private Builder() {
+      for (int i = 0; i < this.senses.length; i++) {
+        this.senses[i] = new HashMap<Integer, int[]>();
+      }
+    }
+
+    private static long synsetKey(final int posIndex, final long offset) {
+      return offset * POS_KEYS.length + posIndex;
+    }
+
+    private int synsetId(final long key) {
+
+      Integer id = this.synsetIds.get(key);
+      if (id == null) {
+        id = this.synsetIds.size();
+        this.synsetIds.put(key, id);
+      }
+      return id;
+    }
+
+    /*
+     * synset_offset lex_filenum ss_type w_cnt (word lex_id)* p_cnt (pointer
+     * offset pos source/target)* ...
+     */
+    private void readData(final File file) throws IOException {
+
+      try (BufferedReader reader = WordNetIndex.open(file)) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          if (WordNetIndex.isHeader(line)) {
+            continue;
+          }
+          final StringTokenizer tokens = new StringTokenizer(line, " ");
+          final long offset = Long.parseLong(tokens.nextToken());
+          tokens.nextToken();
+          final int source = this.synsetId(
+              Builder.synsetKey(WordNetIndex.posIndex(tokens.nextToken()), offset));
+          final int wordCount = Integer.parseInt(tokens.nextToken(), 16);
+
+          for (int i = 0; i < wordCount * 2; i++) {
+            tokens.nextToken();
+          }
+          final int pointerCount = Integer.parseInt(tokens.nextToken());
+
+          for (int i = 0; i < pointerCount; i++) {
+            final String symbol = tokens.nextToken();
+            final long targetOffset = Long.parseLong(tokens.nextToken());
+            final long target = Builder.synsetKey(WordNetIndex.posIndex(tokens.nextToken()),
+                targetOffset);
+            tokens.nextToken();
+
+            if ("!".equals(symbol)) {
+              this.antonymSources.add(source);
+              this.antonymTargets.add(target);
+            } else if ("&".equals(symbol)) {
+              this.similarSources.add(source);
+              this.similarTargets.add(target);
+            }
+          }
+        }
+      }
+    }
+
+    /*
+     * lemma pos synset_cnt p_cnt (ptr_symbol)* sense_cnt tagsense_cnt
+     * (synset_offset)*
+     */
+    private void readIndex(final File file, final int posIndex) throws IOException {
+
+      try (BufferedReader reader = WordNetIndex.open(file)) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          if (WordNetIndex.isHeader(line)) {
+            continue;
+          }
+          final StringTokenizer tokens = new StringTokenizer(line, " ");
+          final String lemma = tokens.nextToken().replace('_', ' ');
+          tokens.nextToken();
+          final int synsetCount = Integer.parseInt(tokens.nextToken());
+          final int pointerCount = Integer.parseInt(tokens.nextToken());
+
+          for (int i = 0; i < pointerCount + 2; i++) {
+            tokens.nextToken();
+          }
+          final int[] lemmaSenses = new int[synsetCount];
+
+          for (int i = 0; i < synsetCount; i++) {
+            lemmaSenses[i] = this
+                .synsetId(Builder.synsetKey(posIndex, Long.parseLong(tokens.nextToken())));
+          }
+          this.senses[posIndex].put(this.lemmaId(lemma), lemmaSenses);
+        }
+      }
+    }
+
+    private int lemmaId(final String lemma) {
+
+      Integer id = this.lemmaIds.get(lemma);
+      if (id == null) {
+        id = this.lemmaIds.size();
+        this.lemmaIds.put(lemma, id);
+      }
+      return id;
+    }
+
+    private WordNetIndex build() {
+
+      final int[][][] lemmaSenses = new int[POS_KEYS.length][this.lemmaIds.size()][];
+
+      for (int pos = 0; pos < POS_KEYS.length; pos++) {
+        for (final Map.Entry<Integer, int[]> entry : this.senses[pos].entrySet()) {
+          lemmaSenses[pos][entry.getKey()] = entry.getValue();
+        }
+      }
+
+      /* resolve the targets first: pointers may lead to synsets of missing files */
+      final int[] antonymTargetIds = this.resolve(this.antonymTargets);
+      final int[] similarTargetIds = this.resolve(this.similarTargets);
+      final int synsetCount = this.synsetIds.size();
+      final int[] antonymStart = new int[synsetCount + 1];
+      final int[] antonyms = Builder.adjacency(this.antonymSources, antonymTargetIds,
+          antonymStart);
+      final int[] similarStart = new int[synsetCount + 1];
+      final int[] similars = Builder.adjacency(this.similarSources, similarTargetIds,
+          similarStart);
+
+      return new WordNetIndex(this.lemmaIds, lemmaSenses, antonymStart, antonyms, similarStart,
+          similars);
+    }
+
+    /*
+     * turns the list of edges into a compressed adjacency array.
+     */
+    private int[] resolve(final LongArray keys) {
+
+      final int[] ids = new int[keys.size];
+      for (int i = 0; i < keys.size; i++) {
+        ids[i] = this.synsetId(keys.values[i]);
+      }
+      return ids;
+    }
+
+    private static int[] adjacency(final IntArray sources, final int[] targets,
+        final int[] start) {
+
+      final int[] result = new int[sources.size];
+      final int synsetCount = start.length - 1;
+
+      for (int i = 0; i < sources.size; i++) {
+        start[sources.values[i] + 1]++;
+      }
+      for (int s = 0; s < synsetCount; s++) {
+        start[s + 1] += start[s];
+      }
+      final int[] next = Arrays.copyOf(start, synsetCount);
+
+      for (int i = 0; i < sources.size; i++) {
+        result[next[sources.values[i]]++] = targets[i];
+      }
+      return result;
+    }
+  }
+
+  /*
+   * growable arrays of primitives used while building the index.
+   */
+  static final class IntArray {
+
+    int[] values = new int[1024];
+    int size = 0;
+
+    void add(final int value) {
+      if (this.size == this.values.length) {
+        this.values = Arrays.copyOf(this.values, this.size * 2);
+      }
+      this.values[this.size++] = value;
+    }
+  }
+
+  static final class LongArray {
+
+    long[] values = new long[1024];
+    int size = 0;
+
+    void add(final long value) {
+      if (this.size == this.values.length) {
+        this.values = Arrays.copyOf(this.values, this.size * 2);
+      }
+      this.values[this.size++] = value;
+    }
+  }
+
+}
@@ -0,0 +1,110 @@
+package cli;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.lang.ast.Node;
+
+/*
+ * every file started through the pipeline is reported, whatever its stages
+ * throw.
+ */
+public class PipelineTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /*
+   * parses every file, and throws an Error for the files named so.
+   */
+  private static final class FailingAnalyzer extends Analyzer {
+
+    private FailingAnalyzer() {
+      super(Analyzer.DEFAULT_RULESET, "UTF-8");
+    }
+
+    @Override
+    public Node parse(final File file, final Reader source) {
+
+      if (file.getName().startsWith("Unparsable")) {
+        throw new NoClassDefFoundError("net/sourceforge/pmd/Missing");
+      }
+      return super.parse(file, source);
+    }
+
+    @Override
+    public Report analyze(final File file, final Node root) {
+
+      if (file.getName().startsWith("Deep")) {
+        throw new StackOverflowError();
+      }
+      return new Report();
+    }
+  }
+
+  private static final class Results implements Pipeline.Sink {
+
+    private final Map<String, String> outcomes = new TreeMap<String, String>();
+
+    @Override
+    public synchronized void report(final File source, final Report report) {
+      this.outcomes.put(source.getName(), "report");
+    }
+
+    @Override
+    public synchronized void fail(final File source, final Throwable e) {
+      this.outcomes.put(source.getName(), e.getClass().getSimpleName());
+    }
+  }
+
+  private File source(final String name) throws IOException {
+
+    final File file = this.folder.newFile(name);
+
+    Files.write(file.toPath(), "class A {}\n".getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+
+  @Test(timeout = 30000)
+  public void errorsReleaseTheirFile() throws Exception {
+
+    final List<File> sources = new ArrayList<File>();
+    final Results results = new Results();
+
+    for (final String name : Arrays.asList("A.java", "Deep.java", "B.java", "Unparsable.java",
+        "C.java", "Deep2.java")) {
+      sources.add(this.source(name));
+    }
+    Collections.reverse(sources);
+    sources.add(new File(this.folder.getRoot(), "Missing.java"));
+
+    new Pipeline(new FailingAnalyzer(), results, 2, 1).run(sources);
+
+    final Map<String, String> expected = new TreeMap<String, String>();
+    expected.put("A.java", "report");
+    expected.put("B.java", "report");
+    expected.put("C.java", "report");
+    expected.put("Deep.java", "StackOverflowError");
+    expected.put("Deep2.java", "StackOverflowError");
+    expected.put("Unparsable.java", "NoClassDefFoundError");
+    expected.put("Missing.java", "NoSuchFileException");
+    assertEquals(expected, results.outcomes);
+  }
+
+}
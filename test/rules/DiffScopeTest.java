@@ -0,0 +1,136 @@
+package rules;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+/*
+ * the lines DiffScope.parse maps the hunks of fixture diffs to.
+ */
+public class DiffScopeTest {
+
+  private static final File BASE = new File("/repo");
+
+  private static DiffScope parse(final String... lines) throws IOException {
+    return DiffScope.parse(new StringReader(String.join("\n", lines) + "\n"), BASE);
+  }
+
+  private static int[] linesOf(final DiffScope scope, final String path) {
+    return scope.linesOf(new File(BASE, path).getPath());
+  }
+
+  @Test
+  public void changedLinesAreTheNewOnes() throws IOException {
+
+    final DiffScope scope = DiffScopeTest.parse(
+        "diff --git a/src/A.java b/src/A.java",
+        "index 1111111..2222222 100644",
+        "--- a/src/A.java",
+        "+++ b/src/A.java",
+        "@@ -3,2 +3,3 @@ class A {",
+        "-  int a;",
+        "-  int b;",
+        "+  int x;",
+        "+  int y;",
+        "+  int z;");
+
+    assertArrayEquals(new int[] { 3, 3, 3, 4, 5 }, DiffScopeTest.linesOf(scope, "src/A.java"));
+    assertTrue(scope.contains(new File(BASE, "src/A.java")));
+  }
+
+  @Test
+  public void pureDeletionMarksTheLineAtItsPlace() throws IOException {
+
+    final DiffScope scope = DiffScopeTest.parse(
+        "diff --git a/A.java b/A.java",
+        "--- a/A.java",
+        "+++ b/A.java",
+        "@@ -5,2 +4,0 @@",
+        "-  int a;",
+        "-  int b;");
+
+    assertArrayEquals(new int[] { 4, 4 }, DiffScopeTest.linesOf(scope, "A.java"));
+  }
+
+  @Test
+  public void zeroAndOmittedCounts() throws IOException {
+
+    final DiffScope scope = DiffScopeTest.parse(
+        "diff --git a/A.java b/A.java",
+        "--- a/A.java",
+        "+++ b/A.java",
+        "@@ -7,0 +8,2 @@",
+        "+  int a;",
+        "+  int b;",
+        "@@ -20 +22 @@",
+        "-  int c;",
+        "+  int d;",
+        "\\ No newline at end of file");
+
+    assertArrayEquals(new int[] { 8, 9, 22, 22 }, DiffScopeTest.linesOf(scope, "A.java"));
+  }
+
+  @Test
+  public void deletedFileHasNoLines() throws IOException {
+
+    final DiffScope scope = DiffScopeTest.parse(
+        "diff --git a/Gone.java b/Gone.java",
+        "deleted file mode 100644",
+        "index 1111111..0000000",
+        "--- a/Gone.java",
+        "+++ /dev/null",
+        "@@ -1,2 +0,0 @@",
+        "-class Gone {",
+        "-}",
+        "diff --git a/B.java b/B.java",
+        "--- a/B.java",
+        "+++ b/B.java",
+        "@@ -1 +1 @@",
+        "-class B {",
+        "+final class B {");
+
+    assertFalse(scope.contains(new File(BASE, "Gone.java")));
+    assertEquals(1, scope.getFiles().size());
+    assertArrayEquals(new int[] { 1, 1 }, DiffScopeTest.linesOf(scope, "B.java"));
+  }
+
+  @Test
+  public void quotedPathIsUnescaped() throws IOException {
+
+    final DiffScope scope = DiffScopeTest.parse(
+        "diff --git \"a/src/na\\303\\257ve \\\"x\\\".java\" \"b/src/na\\303\\257ve \\\"x\\\".java\"",
+        "--- \"a/src/na\\303\\257ve \\\"x\\\".java\"",
+        "+++ \"b/src/na\\303\\257ve \\\"x\\\".java\"",
+        "@@ -1,0 +2 @@",
+        "+  int a;");
+
+    assertArrayEquals(new int[] { 2 },
+        DiffScopeTest.linesOf(scope, "src/na\u00efve \"x\".java"));
+  }
+
+  @Test
+  public void plainDiffKeepsTheBDirectory() throws IOException {
+
+    final DiffScope scope = DiffScopeTest.parse(
+        "--- b/A.java\t2024-01-01 00:00:00.000000000 +0000",
+        "+++ b/A.java\t2024-01-02 00:00:00.000000000 +0000",
+        "@@ -1 +1 @@",
+        "-class A {",
+        "+final class A {");
+
+    assertTrue(scope.contains(new File(BASE, "b/A.java")));
+  }
+
+  @Test
+  public void unquoteEscapes() {
+    assertEquals("a\tb\\c\"d\u00e9", DiffScope.unquote("a\\tb\\\\c\\\"d\\303\\251"));
+  }
+
+}
@@ -0,0 +1,62 @@
+package rules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/*
+ * the method detectors that need neither the tagger nor WordNet.
+ */
+public class MethodsLAPDRuleTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private List<String> b7(final String source) throws Exception {
+    return RuleFixture.methodViolations(this.folder.getRoot(), source,
+        "getMethodDoesNotReturnAttribute", "true");
+  }
+
+  @Test
+  public void getterReturningItsAttributeIsNotReported() throws Exception {
+
+    final List<String> violations = this.b7("class Fixture {\n"
+        + "  private String name;\n"
+        + "  private int size;\n"
+        + "  String getName() { return name; }\n"
+        + "  int getSize() { return this.size; }\n"
+        + "}\n");
+
+    assertTrue(violations.toString(), violations.isEmpty());
+  }
+
+  @Test
+  public void getterReturningAnotherVariableIsReported() throws Exception {
+
+    final List<String> violations = this.b7("class Fixture {\n"
+        + "  private String name;\n"
+        + "  private String label;\n"
+        + "  String getName() { return label; }\n"
+        + "}\n");
+
+    assertEquals(1, violations.size());
+    assertTrue(violations.get(0), violations.get(0).startsWith("4: LAPD - B7"));
+  }
+
+  @Test
+  public void getterWithoutAttributeIsNotReported() throws Exception {
+
+    final List<String> violations = this.b7("class Fixture {\n"
+        + "  private String label;\n"
+        + "  String getName() { return label; }\n"
+        + "}\n");
+
+    assertTrue(violations.toString(), violations.isEmpty());
+  }
+
+}
@@ -0,0 +1,95 @@
+package rules;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import cli.Analyzer;
+import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.RuleViolation;
+
+/*
+ * runs a LAPD rule on a source with the properties of a ruleset written for
+ * the test: the detector properties not given are disabled, so that the
+ * tagger and WordNet are only loaded by the tests needing them.
+ */
+final class RuleFixture {
+
+  static final String[] METHOD_DETECTORS = { "isMethodNotBoolean", "setMethodReturns",
+      "collectionTypeSingleNameMethod", "notImplementedCondition",
+      "validationMethodDoesNotConfirm", "getMethodDoesNotReturn", "falseBooleanMethod",
+      "transformMethodDoesNotReturn", "singleTypeCollectionNameMethod",
+      "getMethodDoesNotReturnAttribute", "oppositeMethodNameAndMethodType",
+      "oppositeCommentAndMethodSignature" };
+
+  private RuleFixture() {
+  }
+
+  /*
+   * the violations of the methods rule on the source; properties are name,
+   * value pairs.
+   */
+  static List<String> methodViolations(final File folder, final String source,
+      final String... properties) throws Exception {
+
+    final Report report = RuleFixture.analyze(folder, source, properties);
+    final List<String> violations = new ArrayList<String>();
+
+    for (final RuleViolation violation : report.getViolations()) {
+      violations.add(violation.getBeginLine() + ": " + violation.getDescription());
+    }
+    return violations;
+  }
+
+  static Report analyze(final File folder, final String source, final String... properties)
+      throws Exception {
+
+    final StringBuilder ruleset = new StringBuilder();
+
+    ruleset.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+        .append("<ruleset xmlns=\"http://pmd.sourceforge.net/ruleset/2.0.0\" name=\"test\">\n")
+        .append("<description>test</description>\n")
+        .append("<rule name=\"MethodsLAPDRule\" language=\"java\" message=\"MethodsLAPDRule\"")
+        .append(" class=\"rules.MethodsLAPDRule\">\n<priority>1</priority>\n<properties>\n");
+    for (final String detector : METHOD_DETECTORS) {
+      if (!RuleFixture.isSet(detector, properties)) {
+        RuleFixture.appendProperty(ruleset, detector, "false");
+      }
+    }
+    for (int i = 0; i < properties.length; i += 2) {
+      RuleFixture.appendProperty(ruleset, properties[i], properties[i + 1]);
+    }
+    ruleset.append("</properties>\n</rule>\n</ruleset>\n");
+
+    final File rulesetFile = new File(folder, "ruleset.xml");
+    final File sourceFile = new File(folder, "Fixture.java");
+
+    RuleFixture.write(rulesetFile, ruleset.toString());
+    RuleFixture.write(sourceFile, source);
+    return new Analyzer(rulesetFile.getPath(), "UTF-8").analyze(sourceFile);
+  }
+
+  private static boolean isSet(final String name, final String[] properties) {
+
+    for (int i = 0; i < properties.length; i += 2) {
+      if (properties[i].equals(name)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static void appendProperty(final StringBuilder ruleset, final String name,
+      final String value) {
+    ruleset.append("<property name=\"").append(name).append("\" value=\"").append(value)
+        .append("\"/>\n");
+  }
+
+  private static void write(final File file, final String text) throws IOException {
+    Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+  }
+
+}
@@ -0,0 +1,121 @@
+package rules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/*
+ * the records of the violation streams, and the violations they receive
+ * compared with the PMD report.
+ */
+public class ViolationStreamTest {
+
+  private static final String SOURCE = "class Fixture {\n"
+      + "  private String name;\n"
+      + "  private String label;\n"
+      + "  private String title;\n"
+      + "  private String owner;\n"
+      + "  String getName() { return label; }\n"
+      + "  @SuppressWarnings(\"PMD.MethodsLAPDRule\")\n"
+      + "  String getLabel() { return name; }\n"
+      + "  String getTitle() { return name; } // NOPMD\n"
+      + "  @SuppressWarnings(\"PMD\")\n"
+      + "  String getOwner() { return name; }\n"
+      + "}\n";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @After
+  public void closeStreams() {
+    ViolationStream.closeAll();
+  }
+
+  private List<String> read(final File file) throws Exception {
+    return Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void suppressedViolationsAreInNeitherOutput() throws Exception {
+
+    final List<String> reported = RuleFixture.methodViolations(this.folder.getRoot(), SOURCE,
+        "getMethodDoesNotReturnAttribute", "true");
+
+    assertEquals(1, reported.size());
+    assertTrue(reported.get(0), reported.get(0).startsWith("6: LAPD - B7"));
+
+    final File stream = new File(this.folder.getRoot(), "violations.jsonl");
+    final List<String> streamedReport = RuleFixture.methodViolations(this.folder.getRoot(),
+        SOURCE, "getMethodDoesNotReturnAttribute", "true", "violationStream", stream.getPath());
+
+    assertEquals(1, ViolationStream.closeAll());
+    assertTrue(streamedReport.toString(), streamedReport.isEmpty());
+
+    final List<String> streamed = this.read(stream);
+
+    assertEquals(1, streamed.size());
+    assertTrue(streamed.get(0), streamed.get(0).contains("\"member\":\"getName\""));
+  }
+
+  @Test
+  public void jsonLinesRecord() throws Exception {
+
+    final File file = this.folder.newFile("out.jsonl");
+    final ViolationStream stream = ViolationStream.open(file.getPath(), ViolationStream.JSON_LINES,
+        4);
+
+    stream.write("C1", "MethodsLAPDRule", "src/A.java", 12, 14, "A", "open", "Closed",
+        Arrays.asList("open", "closed"), "say \"no\"\n");
+    stream.write("B7", "MethodsLAPDRule", "src/A.java", 20, 20, "A", "getName", "String", null,
+        "m");
+    assertEquals(2, ViolationStream.closeAll());
+    assertEquals(Arrays.asList("{\"version\":1,\"rule\":\"C1\",\"ruleName\":\"MethodsLAPDRule\","
+        + "\"file\":\"src/A.java\",\"beginLine\":12,\"endLine\":14,\"class\":\"A\","
+        + "\"member\":\"open\",\"type\":\"Closed\",\"antonyms\":[\"open\",\"closed\"],"
+        + "\"message\":\"say \\\"no\\\"\\n\"}",
+        "{\"version\":1,\"rule\":\"B7\",\"ruleName\":\"MethodsLAPDRule\","
+            + "\"file\":\"src/A.java\",\"beginLine\":20,\"endLine\":20,\"class\":\"A\","
+            + "\"member\":\"getName\",\"type\":\"String\",\"antonyms\":[],\"message\":\"m\"}"),
+        this.read(file));
+  }
+
+  @Test
+  public void sarifLog() throws Exception {
+
+    final File file = this.folder.newFile("out.sarif");
+    final ViolationStream stream = ViolationStream.open(file.getPath(), ViolationStream.SARIF, 4);
+    final String header = "{\"version\":\"2.1.0\","
+        + "\"$schema\":\"https://json.schemastore.org/sarif-2.1.0.json\","
+        + "\"runs\":[{\"tool\":{\"driver\":{\"name\":\"LAPD\",\"semanticVersion\":\"1.0.0\"}},"
+        + "\"results\":[";
+    final String result = "{\"ruleId\":\"B7\",\"level\":\"warning\",\"message\":{\"text\":\"m\"},"
+        + "\"locations\":[{\"physicalLocation\":{\"artifactLocation\":{\"uri\":\"src/A.java\"},"
+        + "\"region\":{\"startLine\":1,\"endLine\":3}}}],\"properties\":{\"ruleName\":\"R\","
+        + "\"class\":\"A\",\"member\":\"getName\",\"type\":\"String\",\"antonyms\":[]}}";
+
+    stream.write("B7", "R", "src\\A.java", 0, 3, "A", "getName", "String", null, "m");
+
+    /* complete while the stream is open, once the writer caught up */
+    final long deadline = System.currentTimeMillis() + 5000;
+    while (stream.getWritten() < 1 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    Thread.sleep(100);
+    assertEquals(Arrays.asList(header, result, "]}]}"), this.read(file));
+
+    stream.write("B7", "R", "src/A.java", 1, 3, "A", "getName", "String", null, "m");
+    assertEquals(2, ViolationStream.closeAll());
+    assertEquals(Arrays.asList(header, result + ",", result, "]}]}"), this.read(file));
+  }
+
+}
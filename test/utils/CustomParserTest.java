@@ -0,0 +1,39 @@
+package utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+/*
+ * the instances rules configured with an engine and a cache file share, none
+ * of them loading a model.
+ */
+public class CustomParserTest {
+
+  @Test
+  public void sameConfigurationSharesTheInstance() {
+
+    assertSame(CustomParser.getInstance("tagger", ""), CustomParser.getInstance("TAGGER", null));
+    assertSame(CustomParser.getInstance("parser", ""), CustomParser.getInstance("Parser", ""));
+  }
+
+  @Test
+  public void enginesDoNotShareTheInstance() {
+
+    final CustomParser tagger = CustomParser.getInstance("tagger", "");
+    final CustomParser parser = CustomParser.getInstance("parser", "");
+
+    assertNotSame(tagger, parser);
+    assertEquals(CustomParser.TAGGER_ENGINE, tagger.getEngine());
+    assertEquals(CustomParser.PARSER_ENGINE, parser.getEngine());
+    assertSame(CustomParser.getInstance("tagger", ""), tagger);
+  }
+
+  @Test
+  public void unknownEngineFallsBackToTheTagger() {
+    assertSame(CustomParser.getInstance("tagger", ""), CustomParser.getInstance("crf", ""));
+  }
+
+}
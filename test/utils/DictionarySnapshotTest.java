@@ -0,0 +1,115 @@
+package utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/*
+ * a snapshot compiled from the dictionary of the fragment, written and read
+ * back: the same lemmas and antonym verdicts before and after.
+ */
+public class DictionarySnapshotTest {
+
+  private static final File DICTIONARY = new File("src/utils/dict");
+
+  private static final String[] WORDS = { "good", "better", "bad", "worse", "hot", "hotter",
+      "cold", "colder", "quickly", "slowly", "open", "opened", "opening", "close", "closes",
+      "valid", "invalid", "empty", "full", "first", "last", "get", "set", "add", "remove",
+      "increase", "decreases", "green", "xyzzy" };
+
+  private static DictionarySnapshot compiled;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @BeforeClass
+  public static void compile() throws IOException {
+    DictionarySnapshotTest.compiled = DictionarySnapshot.compile(DICTIONARY);
+  }
+
+  private DictionarySnapshot roundTrip() throws IOException {
+
+    final File file = new File(this.folder.getRoot(), DictionarySnapshot.FILE_NAME);
+
+    DictionarySnapshotTest.compiled.write(file);
+    return DictionarySnapshot.read(file);
+  }
+
+  @Test
+  public void readSnapshotGivesTheSameVerdicts() throws IOException {
+
+    final DictionarySnapshot read = this.roundTrip();
+
+    assertEquals(compiled.getIndex().getLemmaCount(), read.getIndex().getLemmaCount());
+    assertEquals(compiled.getIndex().getSynsetCount(), read.getIndex().getSynsetCount());
+
+    for (final String word : WORDS) {
+      for (final String posKey : WordNetIndex.POS_KEYS) {
+        assertEquals(word + " " + posKey, compiled.lookup(word, posKey),
+            read.lookup(word, posKey));
+      }
+      assertEquals(word, compiled.hasAntonym(word), read.hasAntonym(word));
+
+      for (final String other : WORDS) {
+        assertEquals(word + " " + other, compiled.haveAntonyms(word, other),
+            read.haveAntonyms(word, other));
+      }
+    }
+  }
+
+  @Test
+  public void inflectionsResolveToTheirLemma() throws IOException {
+
+    final DictionarySnapshot read = this.roundTrip();
+
+    assertEquals("cold", read.lookup("colder", "a"));
+    assertEquals("hot", read.lookup("hotter", "a"));
+    assertEquals("open", read.lookup("opened", "v"));
+    assertNull(read.lookup("xyzzy", "a"));
+    assertTrue(read.haveAntonyms("better", "worse"));
+    assertTrue(read.haveAntonyms("hotter", "cold"));
+    assertFalse(read.haveAntonyms("good", "green"));
+    assertFalse(read.hasAntonym("xyzzy"));
+  }
+
+  @Test
+  public void snapshotOfAnotherVersionIsNotRead() throws IOException {
+
+    final File file = this.folder.newFile();
+
+    try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+      out.writeInt(0x4c415053);
+      out.writeInt(Integer.MAX_VALUE);
+    }
+    assertNull(DictionarySnapshot.read(file));
+    assertNull(DictionarySnapshot.read(this.folder.newFile()));
+  }
+
+  @Test
+  public void snapshotOlderThanTheDictionaryIsOutOfDate() throws IOException {
+
+    final File directory = this.folder.newFolder();
+    final File snapshot = new File(directory, DictionarySnapshot.FILE_NAME);
+    final File index = new File(directory, "index.adv");
+
+    assertFalse(DictionarySnapshot.isUpToDate(snapshot, directory));
+    assertTrue(snapshot.createNewFile() && index.createNewFile());
+    assertTrue(index.setLastModified(1000000000000L));
+    assertTrue(snapshot.setLastModified(2000000000000L));
+    assertTrue(DictionarySnapshot.isUpToDate(snapshot, directory));
+    assertTrue(index.setLastModified(3000000000000L));
+    assertFalse(DictionarySnapshot.isUpToDate(snapshot, directory));
+  }
+
+}
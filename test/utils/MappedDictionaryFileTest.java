@@ -0,0 +1,112 @@
+package utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.didion.jwnl.data.POS;
+import net.didion.jwnl.dictionary.file.DictionaryFileType;
+
+/*
+ * the lines binarySearch finds in sorted index files, compared with those a
+ * sequential read of the file finds.
+ */
+public class MappedDictionaryFileTest {
+
+  private static final String DICTIONARY = "src/utils/dict";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static MappedDictionaryFile open(final String path) throws IOException {
+
+    final MappedDictionaryFile file = new MappedDictionaryFile(path, POS.ADVERB,
+        DictionaryFileType.INDEX);
+
+    file.open();
+    return file;
+  }
+
+  private File write(final String content) throws IOException {
+
+    final File directory = this.folder.newFolder();
+
+    try (FileOutputStream out = new FileOutputStream(new File(directory, "index.adv"))) {
+      out.write(content.getBytes("ISO-8859-1"));
+    }
+    return directory;
+  }
+
+  @Test
+  public void everyWordIsFoundAtItsLine() throws IOException {
+
+    final MappedDictionaryFile file = MappedDictionaryFileTest.open(DICTIONARY);
+    int words = 0;
+
+    try (RandomAccessFile raf = new RandomAccessFile(new File(DICTIONARY, "index.adv"), "r")) {
+      long offset = raf.getFilePointer();
+      String line;
+
+      while ((line = raf.readLine()) != null) {
+        final long next = raf.getFilePointer();
+
+        if (!line.startsWith(" ")) {
+          final String word = line.substring(0, line.indexOf(' '));
+
+          assertEquals(word, offset, file.binarySearch(word));
+          assertEquals(word, next, file.nextLineOffset(offset));
+          words++;
+        }
+        offset = next;
+      }
+    } finally {
+      file.close();
+    }
+    assertTrue(words > 1000);
+  }
+
+  @Test
+  public void missingWordsAreNotFound() throws IOException {
+
+    final MappedDictionaryFile file = MappedDictionaryFileTest.open(DICTIONARY);
+
+    try {
+      for (final String word : new String[] { "0", "a_priori_not", "zzzz", "~" }) {
+        assertEquals(word, -1, file.binarySearch(word));
+      }
+    } finally {
+      file.close();
+    }
+  }
+
+  @Test
+  public void prefixesAreDistinctWords() throws IOException {
+
+    final File directory = this.write(
+        "  1 license line  \n" + "abc 1\n" + "abcd 2\n" + "abd 3\n" + "b 4\n" + "b_c 5");
+    final MappedDictionaryFile file = MappedDictionaryFileTest.open(directory.getPath());
+
+    try {
+      assertEquals(19, file.binarySearch("abc"));
+      assertEquals(25, file.binarySearch("abcd"));
+      assertEquals(32, file.binarySearch("abd"));
+      assertEquals(38, file.binarySearch("b"));
+      assertEquals(42, file.binarySearch("b_c"));
+      assertEquals(-1, file.binarySearch("ab"));
+      assertEquals(-1, file.binarySearch("abce"));
+      assertEquals(-1, file.binarySearch("b_"));
+      assertEquals(47, file.nextLineOffset(42));
+    } finally {
+      file.close();
+    }
+  }
+
+}
@@ -0,0 +1,154 @@
+package utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/*
+ * the records of the tag cache file, read back by the same instance, by others
+ * sharing the file and by the next runs.
+ */
+public class PersistentTagCacheTest {
+
+  private static final long FINGERPRINT = PersistentTagCache.fingerprint("tagger", "model");
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static TaggedIdentifier tagged(final String... tokensAndTags) {
+
+    final String[] tokens = new String[tokensAndTags.length / 2];
+    final String[] tags = new String[tokens.length];
+
+    for (int i = 0; i < tokens.length; i++) {
+      tokens[i] = tokensAndTags[2 * i];
+      tags[i] = tokensAndTags[2 * i + 1];
+    }
+    return new TaggedIdentifier(tokens, tags);
+  }
+
+  private static String describe(final TaggedIdentifier tagged) {
+
+    final StringBuilder text = new StringBuilder();
+
+    for (int i = 0; i < tagged.size(); i++) {
+      text.append(tagged.getToken(i)).append('/').append(tagged.getTag(i)).append(' ');
+    }
+    return text.toString().trim();
+  }
+
+  private File cacheFile() {
+    return new File(this.folder.getRoot(), "tags.cache");
+  }
+
+  @Test
+  public void recordsAreReadBackAfterFlush() throws IOException {
+
+    final PersistentTagCache cache = PersistentTagCache.open(this.cacheFile(), FINGERPRINT);
+    final TaggedIdentifier tagged = PersistentTagCacheTest.tagged("get", "VB", "names", "NNS");
+
+    cache.put("get names", tagged);
+    cache.flush();
+
+    /* read from the file, no longer kept in memory */
+    assertNotSame(tagged, cache.get("get names"));
+    assertEquals("get/VB names/NNS", PersistentTagCacheTest.describe(cache.get("get names")));
+    assertEquals(1, cache.size());
+
+    final PersistentTagCache next = PersistentTagCache.open(this.cacheFile(), FINGERPRINT);
+
+    assertEquals("get/VB names/NNS", PersistentTagCacheTest.describe(next.get("get names")));
+    assertNull(next.get("set names"));
+  }
+
+  @Test
+  public void recordsSpanSeveralSegments() throws IOException {
+
+    final PersistentTagCache cache = PersistentTagCache.open(this.cacheFile(), FINGERPRINT, 64);
+
+    for (int i = 0; i < 100; i++) {
+      cache.put("key " + i, PersistentTagCacheTest.tagged("key", "NN", "n" + i, "CD"));
+      if (i % 7 == 0) {
+        cache.flush();
+      }
+    }
+    cache.flush();
+
+    final PersistentTagCache next = PersistentTagCache.open(this.cacheFile(), FINGERPRINT, 64);
+
+    assertEquals(100, next.size());
+    for (int i = 0; i < 100; i++) {
+      assertEquals("key/NN n" + i + "/CD", PersistentTagCacheTest.describe(cache.get("key " + i)));
+      assertEquals("key/NN n" + i + "/CD", PersistentTagCacheTest.describe(next.get("key " + i)));
+    }
+  }
+
+  @Test
+  public void instancesSharingTheFileKeepEachOthersRecords() throws IOException {
+
+    final PersistentTagCache first = PersistentTagCache.open(this.cacheFile(), FINGERPRINT);
+    final PersistentTagCache second = PersistentTagCache.open(this.cacheFile(), FINGERPRINT);
+
+    first.put("a", PersistentTagCacheTest.tagged("a", "DT"));
+    second.put("b", PersistentTagCacheTest.tagged("b", "NN"));
+    first.flush();
+    second.flush();
+
+    assertNotNull(second.get("a"));
+    assertEquals(2, PersistentTagCache.open(this.cacheFile(), FINGERPRINT).size());
+  }
+
+  @Test
+  public void bytesAfterTheEndAreOverwritten() throws IOException {
+
+    final PersistentTagCache cache = PersistentTagCache.open(this.cacheFile(), FINGERPRINT);
+
+    cache.put("a", PersistentTagCacheTest.tagged("a", "DT"));
+    cache.flush();
+    try (FileOutputStream out = new FileOutputStream(this.cacheFile(), true)) {
+      /* a record cut by a process that died while appending */
+      out.write(new byte[] { 0, 9, 'h', 'a', 'l' });
+    }
+
+    final PersistentTagCache next = PersistentTagCache.open(this.cacheFile(), FINGERPRINT);
+
+    assertEquals(1, next.size());
+    next.put("b", PersistentTagCacheTest.tagged("b", "NN"));
+    next.flush();
+    assertEquals("b/NN",
+        PersistentTagCacheTest.describe(PersistentTagCache.open(this.cacheFile(), FINGERPRINT)
+            .get("b")));
+  }
+
+  @Test
+  public void anotherConfigurationStartsTheFileOver() throws IOException {
+
+    final PersistentTagCache cache = PersistentTagCache.open(this.cacheFile(), FINGERPRINT);
+
+    cache.put("a", PersistentTagCacheTest.tagged("a", "DT"));
+    cache.flush();
+
+    final PersistentTagCache other = PersistentTagCache.open(this.cacheFile(),
+        PersistentTagCache.fingerprint("parser", "model"));
+
+    assertNull(other.get("a"));
+    other.put("a", PersistentTagCacheTest.tagged("a", "NN"));
+    other.flush();
+
+    cache.put("b", PersistentTagCacheTest.tagged("b", "NN"));
+    cache.flush();
+    assertNull(cache.get("a"));
+    assertNull(cache.get("b"));
+    assertEquals("a/NN", PersistentTagCacheTest.describe(other.get("a")));
+  }
+
+}
@@ -0,0 +1,96 @@
+package utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/*
+ * the terms of the single-pass scanner, compared with those of the regular
+ * expressions it replaced: the same except for acronyms, kept whole, and upper
+ * case letters outside ASCII, which start a term.
+ */
+public class SplitterTest {
+
+  /* identifiers split alike by both */
+  private static final String[] SAME = { "md5Hash", "x2y", "_field", "__init__", "m_count",
+      "getName", "isEmpty", "toString", "size", "s", "a", "A", "getX", "setXValue", "getAs",
+      "maxValue2", "camelCase_snake" };
+
+  /* identifier, terms as a method, terms as a variable */
+  private static final String[][] DIFFERENT = {
+      { "getURLs", "get urls", "get urls" },
+      { "HTTPServer", "http server", "http server" },
+      { "XMLParser", "xml parser", "xml parser" },
+      { "parseXML", "parse xml", "parse xml" },
+      { "userID", "user id", "user id" },
+      { "IOException", "io exception", "io exception" },
+      { "URLsList", "urls list", "urls list" },
+      { "ALL_CAPS", "all_ caps", "all caps" },
+      { "MAX", "max", "max" },
+      { "get\u00c9tat", "get \u00e9tat", "get \u00e9tat" } };
+
+  /* the splitting before the scanner */
+  private static List<String> baseline(final String identifier, final boolean variable) {
+
+    String name = identifier;
+
+    if (variable && name.equals(name.toUpperCase())) {
+      name = name.toLowerCase();
+    }
+
+    final List<String> result = new ArrayList<String>();
+
+    for (final String word : name.split(variable ? "(?=[A-Z])|\\_" : "(?=[A-Z])")) {
+      if (word.length() > 0) {
+        result.add(word.toLowerCase());
+      }
+    }
+    return result;
+  }
+
+  private static List<String> terms(final String terms) {
+    return Arrays.asList(terms.split(" "));
+  }
+
+  @Test
+  public void sameTermsAsTheRegularExpressions() {
+
+    for (final String identifier : SAME) {
+      assertEquals(identifier, SplitterTest.baseline(identifier, false),
+          Splitter.methodSplitter(identifier));
+      assertEquals(identifier, SplitterTest.baseline(identifier, true),
+          Splitter.variableSplitter(identifier));
+    }
+  }
+
+  @Test
+  public void acronymsAreKeptWhole() {
+
+    for (final String[] row : DIFFERENT) {
+      assertEquals(row[0], SplitterTest.terms(row[1]), Splitter.methodSplitter(row[0]));
+      assertEquals(row[0], SplitterTest.terms(row[2]), Splitter.variableSplitter(row[0]));
+      assertNotEquals(row[0], SplitterTest.baseline(row[0], false),
+          Splitter.methodSplitter(row[0]));
+    }
+  }
+
+  @Test
+  public void termIdsAreThoseOfTheTerms() {
+
+    for (final String identifier : SAME) {
+      final int[] ids = Splitter.variableTermIds(identifier);
+      final List<String> names = new ArrayList<String>();
+
+      for (final int id : ids) {
+        names.add(Terms.name(id));
+      }
+      assertEquals(identifier, Splitter.variableSplitter(identifier), names);
+    }
+  }
+
+}